@@ -1,7 +1,6 @@
 package fs_student;
 
 import game.controllers.PacManController;
-import game.core.G;
 import game.core.Game;
 
 public class MsPacManAgent implements PacManController {
@@ -14,30 +13,33 @@ public class MsPacManAgent implements PacManController {
 	private int ghostsEatenThisPowerPill = 0;
 	private boolean isPowerPillActive = false;
 	private static final int MAX_GHOSTS_TO_EAT = 3;
+	// Buffers reused every tick so that no arrays are allocated while playing
+	private final int[] possibleDirs = new int[4];
+	private int[] powerPills = new int[4];
 	@Override
 	public int getAction(Game game, long time) {
 		int currentPos = game.getCurPacManLoc();
-		int[] possibleDirs = game.getPossiblePacManDirs(true);
+		int numPossibleDirs = game.getPossiblePacManDirs(true, possibleDirs);
 
-		if (possibleDirs.length == 0) {
+		if (numPossibleDirs == 0) {
 			return game.getCurPacManDir();
 		}
 
 		updatePowerPillStatus(game);
 
 		if (ghostsEatenThisPowerPill >= MAX_GHOSTS_TO_EAT) {
-			return handleNormalBehavior(game, currentPos, possibleDirs);
+			return handleNormalBehavior(game, currentPos, possibleDirs, numPossibleDirs);
 		}
 
 		if (shouldLureGhosts(game, currentPos)) {
-			return handlePowerPillLuring(game, currentPos, possibleDirs);
+			return handlePowerPillLuring(game, currentPos, possibleDirs, numPossibleDirs);
 		} else if (hasEdibleGhosts(game)) {
-			return chaseGhosts(game, currentPos, possibleDirs);
+			return chaseGhosts(game, currentPos, possibleDirs, numPossibleDirs);
 		} else if (isDangerousGhostNearby(game, currentPos)) {
 			currentDirection = -1;
-			return findSafestDirection(game, currentPos, possibleDirs);
+			return findSafestDirection(game, currentPos, possibleDirs, numPossibleDirs);
 		} else {
-			return handleSafeMovement(game, currentPos, possibleDirs);
+			return handleSafeMovement(game, currentPos, possibleDirs, numPossibleDirs);
 		}
 	}
 
@@ -52,15 +54,16 @@ public class MsPacManAgent implements PacManController {
 	}
 
 
-	private int chaseGhosts(Game game, int currentPos, int[] possibleDirs) {
+	private int chaseGhosts(Game game, int currentPos, int[] possibleDirs, int numPossibleDirs) {
 		if (ghostsEatenThisPowerPill >= MAX_GHOSTS_TO_EAT) {
-			return handleSafeMovement(game, currentPos, possibleDirs);
+			return handleSafeMovement(game, currentPos, possibleDirs, numPossibleDirs);
 		}
 
 		int bestDirection = -1;
 		double bestScore = Double.NEGATIVE_INFINITY;
 
-		for (int dir : possibleDirs) {
+		for (int i = 0; i < numPossibleDirs; i++) {
+			int dir = possibleDirs[i];
 			int nextNode = game.getNeighbour(currentPos, dir);
 			if (nextNode != -1) {
 				double score = evaluateGhostChasePosition(game, nextNode);
@@ -71,7 +74,7 @@ public class MsPacManAgent implements PacManController {
 			}
 		}
 
-		return bestDirection != -1 ? bestDirection : possibleDirs[G.rnd.nextInt(possibleDirs.length)];
+		return bestDirection != -1 ? bestDirection : possibleDirs[game.getRandom().nextInt(numPossibleDirs)];
 	}
 	private void updatePowerPillStatus(Game game) {
 		boolean currentPowerPillActive = hasEdibleGhosts(game);
@@ -125,11 +128,11 @@ public class MsPacManAgent implements PacManController {
 		return score;
 	}
 
-	private int handleNormalBehavior(Game game, int currentPos, int[] possibleDirs) {
+	private int handleNormalBehavior(Game game, int currentPos, int[] possibleDirs, int numPossibleDirs) {
 		if (isDangerousGhostNearby(game, currentPos)) {
-			return findSafestDirection(game, currentPos, possibleDirs);
+			return findSafestDirection(game, currentPos, possibleDirs, numPossibleDirs);
 		} else {
-			return handleSafeMovement(game, currentPos, possibleDirs);
+			return handleSafeMovement(game, currentPos, possibleDirs, numPossibleDirs);
 		}
 	}
 	private int countNonLairGhosts(Game game) {
@@ -150,11 +153,11 @@ public class MsPacManAgent implements PacManController {
 		}
 		return count;
 	}
-	private int handleSafeMovement(Game game, int currentPos, int[] possibleDirs) {
+	private int handleSafeMovement(Game game, int currentPos, int[] possibleDirs, int numPossibleDirs) {
 		if (currentDirection != -1 && canMoveInDirection(game, currentPos, currentDirection)) {
 			return currentDirection;
 		}
-		currentDirection = possibleDirs[G.rnd.nextInt(possibleDirs.length)];
+		currentDirection = possibleDirs[game.getRandom().nextInt(numPossibleDirs)];
 		return currentDirection;
 	}
 
@@ -162,11 +165,12 @@ public class MsPacManAgent implements PacManController {
 		return game.getNeighbour(currentPos, direction) != -1;
 	}
 
-	private int findSafestDirection(Game game, int currentPos, int[] possibleDirs) {
+	private int findSafestDirection(Game game, int currentPos, int[] possibleDirs, int numPossibleDirs) {
 		int bestDirection = -1;
 		double bestScore = Double.NEGATIVE_INFINITY;
 
-		for (int dir : possibleDirs) {
+		for (int i = 0; i < numPossibleDirs; i++) {
+			int dir = possibleDirs[i];
 			int nextNode = game.getNeighbour(currentPos, dir);
 			if (nextNode != -1) {
 				double score = evaluatePosition(game, nextNode);
@@ -177,7 +181,7 @@ public class MsPacManAgent implements PacManController {
 			}
 		}
 
-		return bestDirection != -1 ? bestDirection : possibleDirs[G.rnd.nextInt(possibleDirs.length)];
+		return bestDirection != -1 ? bestDirection : possibleDirs[game.getRandom().nextInt(numPossibleDirs)];
 	}
 
 	private double evaluatePosition(Game game, int position) {
@@ -271,9 +275,9 @@ public class MsPacManAgent implements PacManController {
 		return count;
 	}
 
-	private int handlePowerPillLuring(Game game, int currentPos, int[] possibleDirs) {
+	private int handlePowerPillLuring(Game game, int currentPos, int[] possibleDirs, int numPossibleDirs) {
 		int nearestPowerPill = findNearestPowerPill(game, currentPos);
-		if (nearestPowerPill == -1) return handleSafeMovement(game, currentPos, possibleDirs);
+		if (nearestPowerPill == -1) return handleSafeMovement(game, currentPos, possibleDirs, numPossibleDirs);
 
 		int activeGhostCount = countNearbyActiveGhosts(game, nearestPowerPill, POWER_PILL_ACTIVATION);
 		int distanceToPowerPill = game.getPathDistance(currentPos, nearestPowerPill);
@@ -282,17 +286,21 @@ public class MsPacManAgent implements PacManController {
 			return game.getNextPacManDir(nearestPowerPill, true, Game.DM.PATH);
 		}
 
-		return maintainPositionNearPowerPill(game, currentPos, nearestPowerPill, possibleDirs);
+		return maintainPositionNearPowerPill(game, currentPos, nearestPowerPill, possibleDirs, numPossibleDirs);
 	}
 	/**
 	 * Find the nearest power pill
 	 */
 	private int findNearestPowerPill(Game game, int currentPos) {
-		int[] powerPills = game.getPowerPillIndices();
+		if (powerPills.length < game.getNumberPowerPills()) {
+			powerPills = new int[game.getNumberPowerPills()];
+		}
+		int numPowerPills = game.getPowerPillIndices(powerPills);
 		int nearest = -1;
 		int minDistance = Integer.MAX_VALUE;
 
-		for (int pill : powerPills) {
+		for (int i = 0; i < numPowerPills; i++) {
+			int pill = powerPills[i];
 			if (game.checkPowerPill(pill)) {
 				int distance = game.getPathDistance(currentPos, pill);
 				if (distance < minDistance) {
@@ -308,13 +316,14 @@ public class MsPacManAgent implements PacManController {
 	/**
 	 * Stay near power pill without eating it
 	 */
-	private int maintainPositionNearPowerPill(Game game, int currentPos, int powerPillPos, int[] possibleDirs) {
+	private int maintainPositionNearPowerPill(Game game, int currentPos, int powerPillPos, int[] possibleDirs, int numPossibleDirs) {
 		int bestDir = -1;
 		double bestScore = Double.NEGATIVE_INFINITY;
 
 		int nearbyGhosts = countNearbyGhosts(game, powerPillPos, POWER_PILL_ACTIVATION);
 
-		for (int dir : possibleDirs) {
+		for (int i = 0; i < numPossibleDirs; i++) {
+			int dir = possibleDirs[i];
 			int nextNode = game.getNeighbour(currentPos, dir);
 			if (nextNode != -1) {
 				int distanceToPill = game.getPathDistance(nextNode, powerPillPos);
@@ -338,7 +347,7 @@ public class MsPacManAgent implements PacManController {
 			}
 		}
 
-		return bestDir != -1 ? bestDir : findSafestDirection(game, currentPos, possibleDirs);
+		return bestDir != -1 ? bestDir : findSafestDirection(game, currentPos, possibleDirs, numPossibleDirs);
 	}
 	/**
 	 * Evaluate position for luring ghosts
@@ -6,11 +6,27 @@ import game.controllers.GhostController;
 import game.controllers.examples.*;
 import game.core.G;
 import game.core.Game;
+import game.core.GameRandom;
 import game.core.GameView;
 import game.core._G_;
 import game.core.Replay;
+import game.core.GameRecorder;
+import game.core.ReplayRecorder;
 import game.core._RG_;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
 /*
  * This class may be used to execute the game in timed or un-timed modes, with or without
  * visuals. Competitors should implement their controllers in game.entries.ghosts and 
@@ -29,12 +45,39 @@ public class Exec
 		PacManController examplePacMan = new afi.MsPacManAFI();
 		GhostController ghosts = new OriginalGhosts();
 		
+		//an optional second argument fixes the master seed of the experiments so they can be repeated
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : GameRandom.newSeed();
+		
 		if (args.length > 0)
 		{
 			if (args[0].toLowerCase().equals("-testexample"))
-				exec.runExperiment(examplePacMan, ghosts, 100);
+				System.out.println("seed " + seed + "\n" + exec.runExperiment(afi.MsPacManAFI::new, OriginalGhosts::new, 100, seed) + "\n" + exec.getLatencies());
 			else if (args[0].toLowerCase().equals("-teststudent"))
-				exec.runExperiment(studentPacMan, ghosts, 100);
+				System.out.println("seed " + seed + "\n" + exec.runExperiment(fs_student.MsPacManAgent::new, OriginalGhosts::new, 100, seed) + "\n" + exec.getLatencies());
+			else if (args[0].toLowerCase().equals("-profilestudent"))
+			{
+				//an optional third argument sets the allocation budget (in bytes per decision)
+				Profiler profiler = args.length > 2 ? new Profiler(Long.parseLong(args[2])) : new Profiler();
+				exec.setProfiler(profiler);
+				System.out.println("seed " + seed + "\n" + exec.runExperiment(fs_student.MsPacManAgent::new, OriginalGhosts::new, 100, seed) + "\n" + exec.getLatencies() + "\n" + profiler);
+			}
+			else if (args[0].toLowerCase().equals("-quickteststudent"))
+			{
+				//stops once the mean score is known to +/- 250 points, after at most 1000 games or a minute
+				StoppingRule rule = new StoppingRule(250, 1000, 60000);
+				ExperimentResult result = exec.runExperiment(fs_student.MsPacManAgent::new, OriginalGhosts::new, rule, seed);
+				System.out.println("seed " + seed + ", " + rule.getReason(result) + "\n" + result + "\n" + exec.getLatencies());
+			}
+			else if (args[0].toLowerCase().equals("-compare"))
+				System.out.println("seed " + seed + "\n" + exec.runPairedExperiment(fs_student.MsPacManAgent::new, afi.MsPacManAFI::new, OriginalGhosts::new, 100, seed) + "\n" + exec.getLatencies());
+			else if (args[0].toLowerCase().equals("-tournament"))
+			{
+				//every Ms Pac-Man controller against every ghost controller (see Tournament)
+				Tournament tournament = new Tournament();
+				tournament.discover();
+				tournament.play(100, seed);
+				System.out.println("seed " + seed + "\n" + tournament);
+			}
 			else if (args[0].toLowerCase().equals("-visualexample"))
 				exec.runGame(examplePacMan, ghosts, true, G.DELAY);
 			else
@@ -58,16 +101,103 @@ public class Exec
 		//this allows you to record a game and replay it later. This could be very useful when
 		//running many games in non-visual mode - one can then pick out those that appear irregular
 		//and replay them in visual mode to see what is happening.
-//		exec.runGameTimedAndRecorded(new RandomPacMan(),new Legacy2TheReckoning(),true,"human-v-Legacy2.txt");
-//		exec.replayGame("human-v-Legacy2.txt");
+//		exec.runGameTimedAndRecorded(new RandomPacMan(),new Legacy2TheReckoning(),true,"human-v-Legacy2.rep");
+//		exec.replayGame("human-v-Legacy2.rep");
 	}
 	
-    protected int pacDir;
-    protected int[] ghostDirs;
     protected _G_ game;
-    protected PacMan pacMan;
-    protected Ghosts ghosts;
-    protected boolean pacmanPlayed,ghostsPlayed;
+    protected Latencies latencies=new Latencies();	//decision times of the controllers during the latest run
+    protected Profiler profiler;						//optional, see setProfiler(-)
+    protected Path replayDirectory;					//optional, see setReplayDirectory(-)
+    protected boolean defaultInstances;				//whether the suppliers create the controllers as their no-argument constructors do, see setReplayDirectory(-,-)
+    
+    //The decision times of the controllers during the latest run (printed at the end of the runs that do not return any results)
+    public Latencies getLatencies()
+    {
+    	return latencies;
+    }
+    
+    /*
+     * Turns on the profiling of the controllers' allocations and CPU time in all subsequent runs (null turns it off).
+     * The profile accumulates across runs; it is printed at the end of the runs that do not return any results, 
+     * and every run fails with an IllegalStateException once it is over if a decision exceeded the profiler's 
+     * allocation budget.
+     */
+    public void setProfiler(Profiler profiler)
+    {
+    	this.profiler=profiler;
+    }
+    
+    /*
+     * Records every trial of the experiments run from now on (runExperiment(-,-,-,-) and the like) into the directory
+     * supplied (null turns it off), with all the actions taken, as <Ms Pac-Man's controller>-<ghosts' controller>-
+     * <seed>.rep (the full class names; the trials of a paired experiment end in -1 or -2, for the first or second
+     * Ms Pac-Man). Any trial can then be watched with replayGame(-) or checked with ReplayAnalyzer.
+     */
+    public void setReplayDirectory(Path replayDirectory)
+    {
+    	setReplayDirectory(replayDirectory,false);
+    }
+    
+    /*
+     * Same as above, but if defaultInstances is true the caller vouches that the suppliers of the experiments create
+     * their controllers as their classes' public no-argument constructors do (e.g., RandomPacMan::new, not
+     * () -> new MyPacMan(depth)): the games of deterministic controllers then only take a few dozen bytes, as the
+     * replay creates new instances to play them again (see ReplayRecorder.open(-)).
+     */
+    public void setReplayDirectory(Path replayDirectory,boolean defaultInstances)
+    {
+    	this.replayDirectory=replayDirectory;
+    	this.defaultInstances=defaultInstances;
+    }
+    
+    //Starts measuring the controllers for a new run
+    protected void startMeasuring()
+    {
+    	latencies=new Latencies();
+    	
+    	if(profiler!=null)
+    		profiler.start();
+    }
+    
+    //Wraps the controller so that its decisions are measured (when profiling, the latencies include the profiler's overhead)
+    protected PacManController measurePacMan(PacManController pacManController)
+    {
+    	String name=Latencies.getName(pacManController);
+    	
+    	if(profiler!=null)
+    		pacManController=profiler.wrapPacMan(pacManController,name);
+    	
+    	return latencies.wrapPacMan(pacManController,name);
+    }
+    
+    //Wraps the controller so that its decisions are measured (when profiling, the latencies include the profiler's overhead)
+    protected GhostController measureGhosts(GhostController ghostController)
+    {
+    	String name=Latencies.getName(ghostController);
+    	
+    	if(profiler!=null)
+    		ghostController=profiler.wrapGhosts(ghostController,name);
+    	
+    	return latencies.wrapGhosts(ghostController,name);
+    }
+    
+    //Stops measuring the controllers at the end of a run, printing the measurements if required
+    protected void stopMeasuring(boolean print)
+    {
+    	if(print)
+    		System.out.println(latencies);
+    	
+    	if(profiler!=null)
+    	{
+    		profiler.stop();
+    		
+    		if(print)
+    			System.out.println(profiler);
+    		
+    		profiler.checkAllocationBudget();
+    	}
+    }
    
     /*
      * For running multiple games without visuals. This is useful to get a good idea of how well a controller plays
@@ -78,24 +208,278 @@ public class Exec
     public void runExperiment(PacManController pacManController,GhostController ghostController,int trials)
     {
     	double avgScore=0;
+    	startMeasuring();
+    	pacManController=measurePacMan(pacManController);
+    	ghostController=measureGhosts(ghostController);
     	
-		game=new _G_();
-		
 		for(int i=0;i<trials;i++)
 		{
-			game.newGame();
-			
-			while(!game.gameOver())
-			{
-				long due=System.currentTimeMillis()+G.DELAY;
-		        game.advanceGame(pacManController.getAction(game.copy(),due),ghostController.getActions(game.copy(),due));
-			}
+			game=playGame(pacManController,ghostController,GameRandom.newSeed());
 			
 			avgScore+=game.getScore();
 //			System.out.println(game.getScore());
 		}
 		
 		System.out.println(avgScore/trials);
+		stopMeasuring(true);
+    }
+    
+    /*
+     * Same as above but the trials are spread across all cores. Every trial is played by new controllers, obtained
+     * from the suppliers (e.g., RandomPacMan::new), on its own game, whose seed is derived from the master seed 
+     * supplied: the results only depend on that seed (if the controllers are deterministic given the game's random 
+     * number generator), not on the number of cores or the order in which the trials are played.
+     */
+    public ExperimentResult runExperiment(Supplier<? extends PacManController> pacManControllers,Supplier<? extends GhostController> ghostControllers,int trials,long seed)
+    {
+    	long[] seeds=getTrialSeeds(seed,trials);
+    	int[] scores=new int[trials],levels=new int[trials];
+    	long start=System.nanoTime();
+    	startMeasuring();
+    	
+    	IntStream.range(0,trials).parallel().forEach(i->
+    	{
+    		_G_ game=playTrial(pacManControllers.get(),ghostControllers.get(),seeds[i],0);
+    		scores[i]=game.getScore();
+    		levels[i]=game.getCurLevel();
+    	});
+    	
+    	ExperimentResult result=new ExperimentResult(scores,levels,System.nanoTime()-start);
+    	stopMeasuring(false);
+    	
+    	return result;
+    }
+    
+    /*
+     * Compares two Ms Pac-Man controllers on the same games (common random numbers): trial i of both controllers
+     * is played with the same seed, so both meet the ghost reversals at the same steps (see G.isReversalDue()) and
+     * the ghosts draw the same random numbers at every step (their copies are keyed by the seed and the time, see
+     * G.copyInto(-)), whatever the controllers do. The differences of the scores are reported with their confidence
+     * interval and significance. How much of the luck cancels out depends on how alike the two controllers play:
+     * once their games differ, the same random events no longer have the same effect. getVarianceReduction() of
+     * the result tells what the pairing has gained (about 1, nothing, for controllers as different as
+     * NearestPillPacMan and MsPacManAgent).
+     */
+    public PairedResult runPairedExperiment(Supplier<? extends PacManController> firstPacManControllers,Supplier<? extends PacManController> secondPacManControllers,
+    		Supplier<? extends GhostController> ghostControllers,int trials,long seed)
+    {
+    	long[] seeds=getTrialSeeds(seed,trials);
+    	int[] firstScores=new int[trials],firstLevels=new int[trials],secondScores=new int[trials],secondLevels=new int[trials];
+    	String[] names=new String[2];	//names of the controllers, taken from those of the first trial
+    	long start=System.nanoTime();
+    	startMeasuring();
+    	
+    	IntStream.range(0,trials).parallel().forEach(i->
+    	{
+    		PacManController first=firstPacManControllers.get(),second=secondPacManControllers.get();
+    		
+    		if(i==0)
+    		{
+    			names[0]=Latencies.getName(first);
+    			names[1]=Latencies.getName(second);
+    		}
+    		
+    		_G_ game=playTrial(first,ghostControllers.get(),seeds[i],1);
+    		firstScores[i]=game.getScore();
+    		firstLevels[i]=game.getCurLevel();
+    		
+    		game=playTrial(second,ghostControllers.get(),seeds[i],2);
+    		secondScores[i]=game.getScore();
+    		secondLevels[i]=game.getCurLevel();
+    	});
+    	
+    	long elapsed=System.nanoTime()-start;
+    	stopMeasuring(false);
+    	
+    	return new PairedResult(names[0],new ExperimentResult(firstScores,firstLevels,elapsed),names[1],new ExperimentResult(secondScores,secondLevels,elapsed));
+    }
+    
+    /*
+     * Same as runExperiment(-,-,-,-) but every trial is recorded in the journal supplied, under the names supplied,
+     * as soon as it is over, and the trials already in the journal (for the same names and seed) are not played
+     * again: an experiment that was interrupted is resumed by running it again with the same journal, names and
+     * master seed. The names must tell the controllers apart as the suppliers create them (e.g., "MyPacMan(depth 3)"
+     * for () -> new MyPacMan(3)), or the trials of another configuration would be taken for theirs.
+     */
+    public ExperimentResult runExperiment(String pacManName,Supplier<? extends PacManController> pacManControllers,String ghostsName,
+    		Supplier<? extends GhostController> ghostControllers,int trials,long seed,ExperimentJournal journal)
+    {
+    	long[] seeds=getTrialSeeds(seed,trials);
+    	int[] scores=new int[trials],levels=new int[trials];
+    	long start=System.nanoTime();
+    	startMeasuring();
+    	
+    	IntStream.range(0,trials).parallel().forEach(i->
+    	{
+    		scores[i]=journal.getScore(pacManName,ghostsName,seeds[i]);
+    		levels[i]=journal.getLevel(pacManName,ghostsName,seeds[i]);
+    		
+    		if(scores[i]<0)
+    		{
+    			_G_ game=playTrial(pacManControllers.get(),ghostControllers.get(),seeds[i],0);
+    			scores[i]=game.getScore();
+    			levels[i]=game.getCurLevel();
+    			journal.record(pacManName,ghostsName,seeds[i],scores[i],levels[i]);
+    		}
+    	});
+    	
+    	ExperimentResult result=new ExperimentResult(scores,levels,System.nanoTime()-start);
+    	stopMeasuring(false);
+    	
+    	return result;
+    }
+    
+    /*
+     * Adaptive version of runExperiment(-,-,-,-): games are played in parallel until the rule supplied says the
+     * score is known precisely enough, or until its maximum number of games or time is reached (see StoppingRule;
+     * the first batch of games is always played, however short the time). The trials are those of the experiment
+     * with the rule's maximum number of games, so an experiment that stops early gives the same result as the fixed
+     * one with as many trials.
+     */
+    public ExperimentResult runExperiment(Supplier<? extends PacManController> pacManControllers,Supplier<? extends GhostController> ghostControllers,StoppingRule rule,long seed)
+    {
+    	long[] seeds=getTrialSeeds(seed,rule.getMaxTrials());
+    	int[] scores=new int[seeds.length],levels=new int[seeds.length];
+    	long start=System.nanoTime(),maxNanos=TimeUnit.MILLISECONDS.toNanos(rule.getMaxMillis());	//saturates: Long.MAX_VALUE ms is no limit
+    	int played=0;
+    	ExperimentResult result=null;
+    	startMeasuring();
+    	
+    	for(int look : rule.getLooks())
+    	{
+    		played=playTrials(played,look,start,maxNanos,i->
+    		{
+    			_G_ game=playTrial(pacManControllers.get(),ghostControllers.get(),seeds[i],0);
+    			scores[i]=game.getScore();
+    			levels[i]=game.getCurLevel();
+    		});
+    		
+    		result=new ExperimentResult(Arrays.copyOf(scores,played),Arrays.copyOf(levels,played),System.nanoTime()-start);
+    		
+    		if(played<look || rule.isMet(result))
+    			break;
+    	}
+    	
+    	stopMeasuring(false);
+    	
+    	return result;
+    }
+    
+    //Adaptive version of runPairedExperiment(-,-,-,-,-), which also stops as soon as the difference is significant (see StoppingRule)
+    public PairedResult runPairedExperiment(Supplier<? extends PacManController> firstPacManControllers,Supplier<? extends PacManController> secondPacManControllers,
+    		Supplier<? extends GhostController> ghostControllers,StoppingRule rule,long seed)
+    {
+    	long[] seeds=getTrialSeeds(seed,rule.getMaxTrials());
+    	int[] firstScores=new int[seeds.length],firstLevels=new int[seeds.length],secondScores=new int[seeds.length],secondLevels=new int[seeds.length];
+    	long start=System.nanoTime(),maxNanos=TimeUnit.MILLISECONDS.toNanos(rule.getMaxMillis());	//saturates: Long.MAX_VALUE ms is no limit
+    	int played=0;
+    	PairedResult result=null;
+    	String[] names=new String[2];	//names of the controllers, taken from those of the first trial
+    	startMeasuring();
+    	
+    	for(int look : rule.getLooks())
+    	{
+    		played=playTrials(played,look,start,maxNanos,i->
+    		{
+    			PacManController first=firstPacManControllers.get(),second=secondPacManControllers.get();
+    			
+    			if(i==0)
+    			{
+    				names[0]=Latencies.getName(first);
+    				names[1]=Latencies.getName(second);
+    			}
+    			
+    			_G_ game=playTrial(first,ghostControllers.get(),seeds[i],1);
+    			firstScores[i]=game.getScore();
+    			firstLevels[i]=game.getCurLevel();
+    			
+    			game=playTrial(second,ghostControllers.get(),seeds[i],2);
+    			secondScores[i]=game.getScore();
+    			secondLevels[i]=game.getCurLevel();
+    		});
+    		
+    		long elapsed=System.nanoTime()-start;
+    		result=new PairedResult(names[0],new ExperimentResult(Arrays.copyOf(firstScores,played),Arrays.copyOf(firstLevels,played),elapsed),
+    				names[1],new ExperimentResult(Arrays.copyOf(secondScores,played),Arrays.copyOf(secondLevels,played),elapsed));
+    		
+    		if(played<look || rule.isMet(result))
+    			break;
+    	}
+    	
+    	stopMeasuring(false);
+    	
+    	return result;
+    }
+    
+    //Plays the trials from the first up to (excluding) the last supplied in parallel batches, until maxNanos have passed since start (System.nanoTime()), but always at least one batch of the experiment; returns the number played
+    private static int playTrials(int first,int last,long start,long maxNanos,IntConsumer trial)
+    {
+    	int batch=4*Runtime.getRuntime().availableProcessors();
+    	
+    	while(first<last && (first==0 || System.nanoTime()-start<maxNanos))
+    	{
+    		int end=Math.min(first+batch,last);
+    		IntStream.range(first,end).parallel().forEach(trial);
+    		first=end;
+    	}
+    	
+    	return first;
+    }
+    
+    //Plays a trial of an experiment with the new controllers supplied, recording it if required (see setReplayDirectory(-)) for the arm supplied (0 unless the experiment is paired); returns the game once it is over
+    protected _G_ playTrial(PacManController pacManController,GhostController ghostController,long seed,int arm)
+    {
+    	if(replayDirectory==null)
+    		return playGame(measurePacMan(pacManController),measureGhosts(ghostController),seed);
+    	
+    	_G_ game=new _G_();
+    	game.newGame(seed);
+    	
+    	//the replay is recorded for the controllers themselves, not for the wrappers that measure them
+    	String fileName=replayDirectory.resolve(pacManController.getClass().getName()+"-"+ghostController.getClass().getName()+"-"+seed+(arm>0 ? "-"+arm : "")+".rep").toString();
+    	
+    	try(GameRecorder recorder=ReplayRecorder.open(fileName,game,seed,pacManController,ghostController,defaultInstances))
+    	{
+    		game.play(measurePacMan(pacManController),measureGhosts(ghostController),actionsTaken->
+    		{
+    			try
+    			{
+    				recorder.record(actionsTaken);
+    			}
+    			catch(IOException ioe)
+    			{
+    				throw new UncheckedIOException(ioe);
+    			}
+    		});
+    	}
+    	catch(IOException ioe)
+    	{
+    		throw new UncheckedIOException("could not record "+fileName,ioe);
+    	}
+    	
+    	return game;
+    }
+    
+    //The seeds of the trials of an experiment, derived from its master seed
+    public static long[] getTrialSeeds(long seed,int trials)
+    {
+    	GameRandom random=new GameRandom(seed);
+    	long[] seeds=new long[trials];
+    	
+    	for(int i=0;i<trials;i++)
+    		seeds[i]=random.nextLong();
+    	
+    	return seeds;
+    }
+    
+    //Plays a complete game without time limits and without visuals; returns the game once it is over
+    public static _G_ playGame(PacManController pacManController,GhostController ghostController,long seed)
+    {
+    	_G_ game=new _G_();
+		game.newGame(seed);
+		game.play(pacManController,ghostController,null);
+		
+		return game;
     }
     
     /*
@@ -106,26 +490,24 @@ public class Exec
      */
 	public void runGame(PacManController pacManController,GhostController ghostController,boolean visual,int delay)
 	{
-		G.rnd = new java.util.Random();
+		startMeasuring();
+		pacManController=measurePacMan(pacManController);
+		ghostController=measureGhosts(ghostController);
 		
 		game=new _G_();
 		game.newGame();
 
-		GameView gv=null;
+		GameView gv=visual ? new GameView(game).showGame() : null;
 		
-		if(visual)
-			gv=new GameView(game).showGame();
-		
-		while(!game.gameOver())
+		game.play(pacManController,ghostController,actionsTaken->
 		{
-			long due=System.currentTimeMillis()+G.DELAY;
-	        game.advanceGame(pacManController.getAction(game.copy(),due),ghostController.getActions(game.copy(),due));
-	        
-	        try{Thread.sleep(delay);}catch(Exception e){}
-	        
-	        if(visual)
-	        	gv.repaint();
-		}
+			try{Thread.sleep(delay);}catch(Exception e){}
+			
+			if(visual)
+				gv.repaint();
+		});
+		
+		stopMeasuring(true);
 	}
 	
     /*
@@ -136,8 +518,6 @@ public class Exec
 	{
 		game=new _G_();
 		game.newGame();
-		pacMan=new PacMan(pacManController);
-		ghosts=new Ghosts(ghostController);
 		
 		GameView gv=null;
 		
@@ -149,44 +529,64 @@ public class Exec
 				gv.getFrame().addKeyListener((Human)pacManController);
 		}		
 		
-		while(!game.gameOver())
+		GameView view=gv;
+		startMeasuring();
+		
+		try(MatchEngine engine=new MatchEngine())
 		{
-			pacMan.alert();
-			ghosts.alert();
-
-			try
-			{
-				Thread.sleep(G.DELAY);
-			}
-			catch(InterruptedException e)
-			{
-				e.printStackTrace();
-			}
-
-	        game.advanceGame(pacDir,ghostDirs);	        
-	        
-	        if(visual)
-	        	gv.repaint();
+			engine.play(measurePacMan(pacManController),measureGhosts(ghostController),game,visual ? actionsTaken->view.repaint() : null);
 		}
 		
-		pacMan.kill();
-		ghosts.kill();
+		stopMeasuring(true);
 	}
 	
+    /*
+     * Same as runExperiment(-,-,-,-) but with time limits, as in the competition: all trials are played at the 
+     * same time, each with the real timing of DELAY milliseconds per step, so the whole experiment takes about
+     * as long as its longest game. With a simulated clock, steps end as soon as the controllers have replied or 
+     * used up their CPU time instead (see MatchEngine), which is much faster. The controllers may still behave 
+     * differently from one run to the next, depending on how much they manage to compute in time.
+     */
+    public ExperimentResult runTimedExperiment(Supplier<? extends PacManController> pacManControllers,Supplier<? extends GhostController> ghostControllers,int trials,long seed,boolean simulatedClock)
+    {
+    	long[] seeds=getTrialSeeds(seed,trials);
+    	int[] scores=new int[trials],levels=new int[trials];
+    	long start=System.nanoTime();
+    	startMeasuring();
+    	
+    	try(MatchEngine engine=new MatchEngine(simulatedClock))
+    	{
+    		List<Future<_G_>> matches=new ArrayList<Future<_G_>>(trials);
+    		
+    		for(int i=0;i<trials;i++)
+    			matches.add(engine.submit(measurePacMan(pacManControllers.get()),measureGhosts(ghostControllers.get()),seeds[i]));
+    		
+    		for(int i=0;i<trials;i++)
+    		{
+    			_G_ game=matches.get(i).get();
+    			scores[i]=game.getScore();
+    			levels[i]=game.getCurLevel();
+    		}
+    	}
+    	catch(InterruptedException|ExecutionException e)
+    	{
+    		throw new IllegalStateException("timed experiment did not complete",e);
+    	}
+    	
+    	ExperimentResult result=new ExperimentResult(scores,levels,System.nanoTime()-start);
+    	stopMeasuring(false);
+    	
+    	return result;
+    }
+	
 	/*
 	 * Runs a game and records all directions taken by all controllers - the data may then be used to replay any game saved using
 	 * replayGame(-).
 	 */
 	public void runGameTimedAndRecorded(PacManController pacManController,GhostController ghostController,boolean visual,String fileName)
 	{
-		String history="";
-		int lastLevel=0;
-		boolean firstWrite=false;	//this makes sure the content of any existing files is overwritten
-		
 		game=new _G_();
 		game.newGame();
-		pacMan=new PacMan(pacManController);
-		ghosts=new Ghosts(ghostController);
 		
 		GameView gv=null;
 		
@@ -198,41 +598,33 @@ public class Exec
 				gv.getFrame().addKeyListener((Human)pacManController);
 		}		
 		
-		while(!game.gameOver())
+		GameView view=gv;
+		startMeasuring();
+		
+		try(MatchEngine engine=new MatchEngine();ReplayRecorder recorder=new ReplayRecorder(fileName,game))
 		{
-			pacMan.alert();
-			ghosts.alert();
-
-			try
+			engine.play(measurePacMan(pacManController),measureGhosts(ghostController),game,actionsTaken->
 			{
-				Thread.sleep(G.DELAY);
-			}
-			catch(InterruptedException e)
-			{
-				e.printStackTrace();
-			}
-
-	        int[] actionsTaken=game.advanceGame(pacDir,ghostDirs);	        
-	        
-	        if(visual)
-	        	gv.repaint();
-	        
-	        history=addActionsToString(history,actionsTaken);
-        	
-	        //saves actions after every level
-        	if(game.getCurLevel()!=lastLevel)
-        	{
-        		Replay.saveActions(history,fileName,firstWrite);
-        		lastLevel=game.getCurLevel();
-        		firstWrite=true;
-        	}	   
+		        if(visual)
+		        	view.repaint();
+		        
+		        try
+		        {
+		        	recorder.record(actionsTaken);
+		        }
+		        catch(IOException ioe)
+		        {
+		        	throw new UncheckedIOException(ioe);
+		        }
+			});
+		}
+		catch(IOException|UncheckedIOException e)
+		{
+			System.out.println("Could not save data!");
+			e.printStackTrace();
 		}
 		
-		//save the final actions
-		Replay.saveActions(history,fileName,firstWrite);
-		
-		pacMan.kill();
-		ghosts.kill();
+		stopMeasuring(true);
 	}
 	
 	/*
@@ -241,10 +633,15 @@ public class Exec
 	 */
 	public void replayGame(String fileName)
 	{
-		_RG_ game=new _RG_();
-		game.newGame();
-
+		replayGame(fileName,0);
+	}
+	
+	//Same as above, but starts the replay at the step (G.getTotalTime()) supplied, which is reached straight away
+	public void replayGame(String fileName,int fromStep)
+	{
 		Replay replay=new Replay(fileName);
+		_RG_ game=replay.getGame(fromStep);
+		
 		PacManController pacManController=replay.getPacMan();
 		GhostController ghostController=replay.getGhosts();
 		
@@ -259,126 +656,4 @@ public class Exec
 	        try{Thread.sleep(G.DELAY);}catch(Exception e){}
 		}
 	}
-	
-    private String addActionsToString(String history,int[] actionsTaken)
-    {
-    	history+=(game.getTotalTime()-1)+"\t"+actionsTaken[0]+"\t";
-
-        for (int i=0;i<G.NUM_GHOSTS;i++)
-        	history+=actionsTaken[i+1]+"\t";
-
-        history+="\n";
-        
-        return history;
-    }
-    	
-	//sets the latest direction to take for each game step (if controller replies in time)
-	public void setGhostDirs(int[] ghostDirs)
-	{
-		this.ghostDirs=ghostDirs;
-		this.ghostsPlayed=true;
-	}
-	
-	//sets the latest direction to take for each game step (if controller replies in time)
-	public void setPacDir(int pacDir)
-	{
-		this.pacDir=pacDir;
-		this.pacmanPlayed=true;
-	}
-	
-	/*
-	 * Wraps the controller in a thread for the timed execution. This class then updates the
-	 * directions for Exec to parse to the game.
-	 */
-	public class PacMan extends Thread 
-	{
-	    private PacManController pacMan;
-	    private boolean alive;
-
-	    public PacMan(PacManController pacMan) 
-	    {
-	        this.pacMan=pacMan;
-	        alive=true;
-	        start();
-	    }
-
-	    public synchronized void kill() 
-	    {
-	        alive=false;
-	        notify();
-	    }
-	    
-	    public synchronized void alert()
-	    {
-	        notify();
-	    }
-
-	    public void run() 
-	    {
-	        while(alive) 
-	        {
-	        	try 
-	        	{
-	        		synchronized(this)
-	        		{
-	        			wait();
-	                }
-	                
-	        		setPacDir(pacMan.getAction(game.copy(),System.currentTimeMillis()+G.DELAY));
-	            } 
-	        	catch(InterruptedException e) 
-	        	{
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-	}
-	
-	/*
-	 * Wraps the controller in a thread for the timed execution. This class then updates the
-	 * directions for Exec to parse to the game.
-	 */
-	public class Ghosts extends Thread 
-	{
-		private GhostController ghosts;
-	    private boolean alive;
-
-	    public Ghosts(GhostController ghosts) 
-	    {	    	
-	    	this.ghosts=ghosts;
-	        alive=true;
-	        start();
-	    }
-
-	    public synchronized void kill() 
-	    {
-	        alive=false;
-	        notify();
-	    }
-
-	    public synchronized void alert() 
-	    {
-	        notify();
-	    }
-	    
-	    public void run() 
-	    {
-	        while(alive) 
-	        {
-	        	try 
-	        	{
-	        		synchronized(this)
-	        		{
-	        			wait();
-	                }
-	                
-	        		setGhostDirs(ghosts.getActions(game.copy(),System.currentTimeMillis()+G.DELAY));
-	            } 
-	        	catch(InterruptedException e) 
-	        	{
-	                e.printStackTrace();
-	            }
-	        }
-	    }
-	}
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * An append-only log of the trials of long experiments, so that a run that dies can be resumed without playing
+ * again the games it had completed (see Exec.runExperiment(-,-,-,-,-,-,ExperimentJournal) and Tournament). Every
+ * trial is a line of CSV, keyed by the names of its controllers and its seed:
+ *
+ * pacman,ghosts,seed,score,level
+ *
+ * Lines are written as soon as the trials are over, so they survive the JVM being killed; they are forced to disk
+ * (fsync) in batches, every SYNC_TRIALS trials or SYNC_MILLIS milliseconds, so a crash of the machine loses at most
+ * that much. An incomplete last line (the run died while writing it) is discarded when the journal is opened.
+ * Instances are thread-safe; a journal is locked while it is open, so two runs (even in different processes)
+ * cannot resume from the same journal at once, and a file that is not a journal is never modified.
+ */
+public class ExperimentJournal implements AutoCloseable
+{
+	public static final int SYNC_TRIALS=100;
+	public static final long SYNC_MILLIS=1000;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final Map<String,int[]> trials=new ConcurrentHashMap<String,int[]>();	//key -> {score, level}
+	private int unsynced;
+	private long lastSync=System.currentTimeMillis();
+
+	/*
+	 * Opens the journal in the file supplied, which is created if it does not exist. Fails if another run has the
+	 * journal open, or if the file is not a journal (a line, or the incomplete last line, is not a trial), in which
+	 * case the file is left as it is.
+	 */
+	public ExperimentJournal(Path file) throws IOException
+	{
+		this.file=file;
+		this.channel=FileChannel.open(file,StandardOpenOption.CREATE,StandardOpenOption.READ,StandardOpenOption.WRITE);
+
+		try
+		{
+			FileLock lock=channel.tryLock();
+
+			if(lock==null)
+				throw new IOException("the journal "+file+" is in use by another run");
+
+			//read through the locked channel: closing another channel on the file may release the lock
+			ByteBuffer buffer=ByteBuffer.allocate((int)channel.size());
+
+			while(buffer.hasRemaining() && channel.read(buffer,buffer.position())>=0);
+
+			byte[] content=buffer.array();
+			int end=content.length;
+
+			while(end>0 && content[end-1]!='\n')
+				end--;
+
+			String[] lines=new String(content,0,end,StandardCharsets.UTF_8).split("\n");
+
+			for(int i=0;i<lines.length && end>0;i++)
+			{
+				String[] fields=lines[i].split(",",-1);
+
+				try
+				{
+					if(fields.length!=5)
+						throw new NumberFormatException();
+
+					trials.put(getKey(fields[0],fields[1],Long.parseLong(fields[2])),new int[]{Integer.parseInt(fields[3]),Integer.parseInt(fields[4])});
+				}
+				catch(NumberFormatException e)
+				{
+					throw new IOException(file+" is not an experiment journal (line "+(i+1)+": "+lines[i]+")");
+				}
+			}
+
+			if(!isIncompleteTrial(new String(content,end,content.length-end,StandardCharsets.UTF_8)))
+				throw new IOException(file+" is not an experiment journal (it does not end with a trial)");
+
+			//new trials are appended after the last complete one
+			channel.truncate(end);
+			channel.position(end);
+		}
+		catch(OverlappingFileLockException e)
+		{
+			channel.close();
+			throw new IOException("the journal "+file+" is already open",e);
+		}
+		catch(IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	public Path getFile()
+	{
+		return file;
+	}
+
+	//Number of trials in the journal
+	public int size()
+	{
+		return trials.size();
+	}
+
+	//Score of the trial supplied, or -1 if it is not in the journal
+	public int getScore(String pacMan,String ghosts,long seed)
+	{
+		int[] trial=trials.get(getKey(pacMan,ghosts,seed));
+
+		return trial==null ? -1 : trial[0];
+	}
+
+	//Level (starting at 0) the trial supplied ended in, or -1 if it is not in the journal
+	public int getLevel(String pacMan,String ghosts,long seed)
+	{
+		int[] trial=trials.get(getKey(pacMan,ghosts,seed));
+
+		return trial==null ? -1 : trial[1];
+	}
+
+	//Appends the outcome of the trial supplied
+	public synchronized void record(String pacMan,String ghosts,long seed,int score,int level)
+	{
+		if(!isValid(pacMan) || !isValid(ghosts))
+			throw new IllegalArgumentException("controller names may not contain commas or line breaks: "+pacMan+", "+ghosts);
+
+		trials.put(getKey(pacMan,ghosts,seed),new int[]{score,level});
+
+		try
+		{
+			ByteBuffer line=ByteBuffer.wrap((pacMan+","+ghosts+","+seed+","+score+","+level+"\n").getBytes(StandardCharsets.UTF_8));
+
+			while(line.hasRemaining())
+				channel.write(line);
+
+			if(++unsynced>=SYNC_TRIALS || System.currentTimeMillis()-lastSync>=SYNC_MILLIS)
+				sync();
+		}
+		catch(IOException ioe)
+		{
+			throw new UncheckedIOException(ioe);
+		}
+	}
+
+	//Forces the trials recorded so far to disk
+	public synchronized void sync() throws IOException
+	{
+		channel.force(false);
+		unsynced=0;
+		lastSync=System.currentTimeMillis();
+	}
+
+	public synchronized void close() throws IOException
+	{
+		if(!channel.isOpen())
+			return;
+
+		sync();
+		channel.close();
+	}
+
+	private static String getKey(String pacMan,String ghosts,long seed)
+	{
+		return pacMan+","+ghosts+","+seed;
+	}
+
+	//Whether the text supplied may be the beginning of a line written by record(-): the start of a trial cut short
+	private static boolean isIncompleteTrial(String text)
+	{
+		String[] fields=text.split(",",-1);
+
+		if(fields.length>5)
+			return false;
+
+		for(int i=2;i<fields.length;i++)
+			if(!fields[i].matches("-?[0-9]*"))
+				return false;
+
+		//no control characters (binary files) nor undecodable bytes, except for a character cut short at the end
+		for(int i=0;i<text.length();i++)
+			if(text.charAt(i)<' ' || (text.charAt(i)=='\uFFFD' && i<text.length()-1))
+				return false;
+
+		return true;
+	}
+
+	private static boolean isValid(String name)
+	{
+		return name.indexOf(',')<0 && name.indexOf('\n')<0 && name.indexOf('\r')<0;
+	}
+}
@@ -0,0 +1,164 @@
+package game;
+
+import game.core.Game;
+
+import java.util.Arrays;
+
+/*
+ * The outcome of an experiment (see Exec.runExperiment): the final score and level of every trial, in the order
+ * of the trials (which does not depend on the order in which they were played), plus the wall-clock time taken.
+ * Provides the summary statistics needed to compare controllers: mean, standard deviation, 95% confidence
+ * interval, extremes, percentiles and the number of games that reached each level.
+ */
+public class ExperimentResult
+{
+	//exact critical values for 1 to 3 degrees of freedom (see criticalValue(-))
+	private static final double[] SMALL_SAMPLE_CRITICAL_VALUES={12.706,12.706,4.303,3.182};
+	
+	private final int[] scores,levels,sortedScores;
+	private final long elapsedNanos;
+
+	public ExperimentResult(int[] scores,int[] levels,long elapsedNanos)
+	{
+		if(scores.length==0)
+			throw new IllegalArgumentException("an experiment must have at least one trial");
+		
+		this.scores=scores;
+		this.levels=levels;
+		this.elapsedNanos=elapsedNanos;
+		this.sortedScores=scores.clone();
+		Arrays.sort(sortedScores);
+	}
+
+	public int getTrials()
+	{
+		return scores.length;
+	}
+
+	//Final score of the trial specified
+	public int getScore(int trial)
+	{
+		return scores[trial];
+	}
+
+	//Level (starting at 0) the trial specified ended in
+	public int getLevel(int trial)
+	{
+		return levels[trial];
+	}
+
+	public double getMean()
+	{
+		return mean(scores);
+	}
+
+	//Sample standard deviation
+	public double getStandardDeviation()
+	{
+		return standardDeviation(scores);
+	}
+
+	//Half-width of the 95% confidence interval of the mean
+	public double getConfidenceInterval()
+	{
+		return confidenceInterval(standardDeviation(scores),scores.length);
+	}
+
+	public int getMin()
+	{
+		return sortedScores[0];
+	}
+
+	public int getMax()
+	{
+		return sortedScores[sortedScores.length-1];
+	}
+
+	//Score below which the percentage supplied (0-100) of the trials fall (nearest rank)
+	public int getPercentile(double percentage)
+	{
+		int rank=(int)Math.ceil(percentage/100*sortedScores.length);
+
+		return sortedScores[Math.min(Math.max(rank-1,0),sortedScores.length-1)];
+	}
+
+	//Number of trials that reached each level, indexed by level (starting at 0)
+	public int[] getLevelsReached()
+	{
+		int[] reached=new int[Game.MAX_LEVELS];
+
+		for(int level : levels)
+			for(int i=0;i<=level;i++)
+				reached[i]++;
+
+		return reached;
+	}
+
+	public double getGamesPerSecond()
+	{
+		return scores.length/(elapsedNanos/1e9);
+	}
+
+	public String toString()
+	{
+		StringBuilder summary=new StringBuilder();
+		summary.append(String.format("%d games in %.1f s (%.1f games/s)%n",scores.length,elapsedNanos/1e9,getGamesPerSecond()));
+		summary.append(String.format("score: %.1f +/- %.1f (95%% CI), sd %.1f%n",getMean(),getConfidenceInterval(),getStandardDeviation()));
+		summary.append(String.format("min %d, p10 %d, p25 %d, median %d, p75 %d, p90 %d, max %d%n",getMin(),getPercentile(10),
+				getPercentile(25),getPercentile(50),getPercentile(75),getPercentile(90),getMax()));
+		summary.append("levels reached:");
+
+		int[] reached=getLevelsReached();
+
+		for(int i=0;i<reached.length && reached[i]>0;i++)
+			summary.append(" ").append(i+1).append(":").append(reached[i]);
+
+		return summary.toString();
+	}
+
+	public static double mean(int[] values)
+	{
+		double sum=0;
+
+		for(int value : values)
+			sum+=value;
+
+		return sum/values.length;
+	}
+
+	//Sample standard deviation (0 for fewer than 2 values)
+	public static double standardDeviation(int[] values)
+	{
+		if(values.length<2)
+			return 0;
+
+		double mean=mean(values),sum=0;
+
+		for(int value : values)
+			sum+=(value-mean)*(value-mean);
+
+		return Math.sqrt(sum/(values.length-1));
+	}
+
+	//Half-width of the 95% confidence interval of the mean of n values with the standard deviation supplied
+	public static double confidenceInterval(double standardDeviation,int n)
+	{
+		if(n<2)
+			return Double.POSITIVE_INFINITY;
+
+		return criticalValue(n-1)*standardDeviation/Math.sqrt(n);
+	}
+
+	//Two-sided 95% critical value of Student's t distribution (Cornish-Fisher expansion around the normal one,
+	//within 0.3% of the exact value from 4 degrees of freedom onwards; tabulated below that)
+	public static double criticalValue(int degreesOfFreedom)
+	{
+		if(degreesOfFreedom<4)
+			return SMALL_SAMPLE_CRITICAL_VALUES[Math.max(degreesOfFreedom,1)];
+
+		double z=1.959964,df=degreesOfFreedom;
+		double z3=z*z*z,z5=z3*z*z,z7=z5*z*z;
+
+		return z+(z3+z)/(4*df)+(5*z5+16*z3+3*z)/(96*df*df)+(3*z7+19*z5+17*z3-15*z)/(384*df*df*df);
+	}
+}
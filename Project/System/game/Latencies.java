@@ -0,0 +1,156 @@
+package game;
+
+import game.controllers.GhostController;
+import game.controllers.GhostControllerWrapper;
+import game.controllers.PacManController;
+import game.controllers.PacManControllerWrapper;
+import game.core.G;
+import game.core.Game;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Records how long the controllers take to decide, per controller and per level, together with the number of
+ * decisions that took longer than DELAY milliseconds (deadline misses). Controllers are measured by wrapping them
+ * (see wrapPacMan(-) and wrapGhosts(-)); the wrappers may be called from any number of threads. toString() gives
+ * the table printed at the end of the runs in Exec: calls, p50, p99, p99.9 and max latency in microseconds, and
+ * deadline misses.
+ */
+public class Latencies
+{
+	private static final long DELAY_NANOS=TimeUnit.MILLISECONDS.toNanos(G.DELAY);
+
+	private final Map<String,Controller> controllers=new ConcurrentSkipListMap<String,Controller>();
+
+	//Returns the controller supplied, measured
+	public PacManController wrapPacMan(PacManController pacMan)
+	{
+		return wrapPacMan(pacMan,getName(pacMan));
+	}
+
+	//Returns the controller supplied, measured under the name supplied
+	public PacManController wrapPacMan(PacManController pacMan,String name)
+	{
+		Controller controller=get(name);
+
+		return new PacManControllerWrapper(pacMan)
+		{
+			public int getAction(Game game,long timeDue)
+			{
+				long start=System.nanoTime();
+				int direction=pacMan.getAction(game,timeDue);
+				controller.record(game.getCurLevel(),System.nanoTime()-start);
+
+				return direction;
+			}
+		};
+	}
+
+	//Returns the controller supplied, measured
+	public GhostController wrapGhosts(GhostController ghosts)
+	{
+		return wrapGhosts(ghosts,getName(ghosts));
+	}
+
+	//Returns the controller supplied, measured under the name supplied
+	public GhostController wrapGhosts(GhostController ghosts,String name)
+	{
+		Controller controller=get(name);
+
+		return new GhostControllerWrapper(ghosts)
+		{
+			public int[] getActions(Game game,long timeDue)
+			{
+				long start=System.nanoTime();
+				int[] directions=ghosts.getActions(game,timeDue);
+				controller.record(game.getCurLevel(),System.nanoTime()-start);
+
+				return directions;
+			}
+		};
+	}
+
+	//Latencies of the controller (class) supplied, for the level supplied (starting at 0), or null if it has not been measured
+	public LatencyHistogram getHistogram(String controller,int level)
+	{
+		Controller measured=controllers.get(controller);
+
+		return measured==null ? null : measured.levels.get(level);
+	}
+
+	//Number of decisions of the controller (class) supplied that took longer than DELAY milliseconds
+	public long getDeadlineMisses(String controller)
+	{
+		Controller measured=controllers.get(controller);
+
+		if(measured==null)
+			return 0;
+		
+		long misses=0;
+		
+		for(LongAdder level : measured.misses.values())
+			misses+=level.sum();
+		
+		return misses;
+	}
+
+	public String toString()
+	{
+		StringBuilder table=new StringBuilder(String.format("%-24s %5s %9s %10s %10s %10s %10s %7s%n","controller","level","calls","p50(us)","p99(us)","p99.9(us)","max(us)",">"+G.DELAY+"ms"));
+
+		for(Map.Entry<String,Controller> entry : controllers.entrySet())
+		{
+			Controller controller=entry.getValue();
+			LatencyHistogram all=new LatencyHistogram();
+
+			for(Map.Entry<Integer,LatencyHistogram> level : controller.levels.entrySet())
+			{
+				append(table,entry.getKey(),Integer.toString(level.getKey()+1),level.getValue(),controller.misses.get(level.getKey()).sum());
+				all.add(level.getValue());
+			}
+
+			append(table,entry.getKey(),"all",all,getDeadlineMisses(entry.getKey()));
+		}
+
+		return table.toString();
+	}
+
+	private static void append(StringBuilder table,String controller,String level,LatencyHistogram histogram,long misses)
+	{
+		table.append(String.format("%-24s %5s %9d %10.1f %10.1f %10.1f %10.1f %7d%n",controller,level,histogram.getCount(),
+				histogram.getPercentile(50)/1e3,histogram.getPercentile(99)/1e3,histogram.getPercentile(99.9)/1e3,histogram.getMax()/1e3,misses));
+	}
+
+	//The name under which the controller supplied is reported: the simple name of its class
+	public static String getName(Object controller)
+	{
+		String name=controller.getClass().getSimpleName();
+
+		return name.isEmpty() ? controller.getClass().getName() : name;
+	}
+
+	private Controller get(String name)
+	{
+		return controllers.computeIfAbsent(name,key->new Controller());
+	}
+
+	//The measurements of one controller (class)
+	private static class Controller
+	{
+		private final Map<Integer,LatencyHistogram> levels=new ConcurrentSkipListMap<Integer,LatencyHistogram>();
+		private final Map<Integer,LongAdder> misses=new ConcurrentSkipListMap<Integer,LongAdder>();
+
+		private void record(int level,long nanos)
+		{
+			//the misses are created first, so they exist for every level listed
+			LongAdder levelMisses=misses.computeIfAbsent(level,key->new LongAdder());
+			levels.computeIfAbsent(level,key->new LatencyHistogram()).record(nanos);
+
+			if(nanos>DELAY_NANOS)
+				levelMisses.increment();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/*
+ * A histogram of durations (in nanoseconds) with log-linear buckets: every power of two is split into 16 buckets,
+ * so percentiles are accurate to about 6% across the whole range, from nanoseconds to minutes, using a fixed array
+ * of counters. Recording is lock-free and may be done concurrently from any number of threads.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BITS=4;					//2^SUB_BITS buckets per power of two
+	private static final int SUB_BUCKETS=1<<SUB_BITS;
+	private static final int NUM_BUCKETS=(64-SUB_BITS)<<SUB_BITS;
+
+	private final AtomicLongArray counts=new AtomicLongArray(NUM_BUCKETS);
+	private final LongAccumulator max=new LongAccumulator(Math::max,0);
+
+	public void record(long nanos)
+	{
+		nanos=Math.max(nanos,0);
+		counts.incrementAndGet(getBucket(nanos));
+		max.accumulate(nanos);
+	}
+
+	//Adds the content of the histogram supplied to this one
+	public void add(LatencyHistogram histogram)
+	{
+		for(int i=0;i<NUM_BUCKETS;i++)
+		{
+			long count=histogram.counts.get(i);
+
+			if(count>0)
+				counts.addAndGet(i,count);
+		}
+
+		max.accumulate(histogram.getMax());
+	}
+
+	public long getCount()
+	{
+		long count=0;
+
+		for(int i=0;i<NUM_BUCKETS;i++)
+			count+=counts.get(i);
+
+		return count;
+	}
+
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	//Duration below which the percentage supplied (0-100) of the values fall, rounded up to the end of its bucket
+	public long getPercentile(double percentage)
+	{
+		long total=getCount();
+
+		if(total==0)
+			return 0;
+
+		long rank=Math.max((long)Math.ceil(percentage/100*total),1),count=0;
+
+		for(int i=0;i<NUM_BUCKETS;i++)
+		{
+			count+=counts.get(i);
+
+			if(count>=rank)
+				return Math.min(getUpperBound(i),getMax());
+		}
+
+		return getMax();
+	}
+
+	//Values below 2^SUB_BITS have a bucket each; above, every power of two is split into SUB_BUCKETS buckets
+	private static int getBucket(long value)
+	{
+		if(value<SUB_BUCKETS)
+			return (int)value;
+
+		int exponent=63-Long.numberOfLeadingZeros(value);
+
+		return ((exponent-SUB_BITS+1)<<SUB_BITS)+(int)((value>>>(exponent-SUB_BITS))&(SUB_BUCKETS-1));
+	}
+
+	//Largest value that falls into the bucket supplied
+	private static long getUpperBound(int bucket)
+	{
+		if(bucket<SUB_BUCKETS)
+			return bucket;
+
+		int exponent=(bucket>>>SUB_BITS)+SUB_BITS-1;
+		long lower=(long)(SUB_BUCKETS+(bucket&(SUB_BUCKETS-1)))<<(exponent-SUB_BITS);
+
+		return lower+(1L<<(exponent-SUB_BITS))-1;
+	}
+}
@@ -0,0 +1,384 @@
+package game;
+
+import game.controllers.GhostController;
+import game.controllers.PacManController;
+import game.core.G;
+import game.core.Game;
+import game.core._G_;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/*
+ * Plays games with time limits, as in the competition: every DELAY milliseconds, both controllers are given a copy
+ * of the game and the game advances with whatever actions they have returned by then. A controller that is still
+ * busy with an earlier step is not asked again, and the game keeps going in the meantime.
+ *
+ * Replies are handed over through a mailbox stamped with the step they were computed for: the game only uses a
+ * reply in that step, so a late reply is never applied to a later step. Late replies are counted and dropped, and 
+ * a controller without a reply in time keeps going in its current direction(s) (see getPacManReplies() and 
+ * getGhostReplies()). The hand-over is lock-free: the reply is written first and the stamp then published with 
+ * release semantics, and read with acquire semantics by the game.
+ *
+ * Matches and controller calls all run on virtual threads, which are cheap to create and to block, so a single
+ * engine can host hundreds of concurrent matches. Each match runs on its own thread, each controller call on a
+ * new one, with the time the step is due as the deadline. Note that virtual threads are not pre-empted: if the
+ * controllers keep all cores busy, the matches themselves wake up late and steps take longer than DELAY. The 
+ * simulated clock (see below) gives exact timing regardless of the load.
+ *
+ * With a simulated clock, the game does not wait for DELAY milliseconds of wall-clock time: it advances as soon as
+ * every controller has replied or has used up DELAY milliseconds of CPU time for the step (a call that is still
+ * running several steps later gets DELAY milliseconds per step). Controllers over budget are treated exactly like
+ * late replies in real time (they miss the step), so the outcome is the same as in the competition (on an idle
+ * machine) but games run at full speed and do not depend on the load of the machine. Controller calls then run on
+ * platform threads, as the CPU time of virtual threads cannot be measured. The time due passed to the controllers
+ * stays on the wall clock (System.currentTimeMillis()+DELAY), so controllers that plan until it is due work
+ * unchanged: on a free core they use about DELAY milliseconds of CPU time, and the budget is only enforced by
+ * the CPU time accounting of the engine.
+ */
+public class MatchEngine implements AutoCloseable
+{
+	private static final long DELAY_NANOS=TimeUnit.MILLISECONDS.toNanos(G.DELAY);
+	private static final int WALL_CLOCK_FACTOR=10;	//simulated clock: calls blocked (without using CPU) for this many steps' worth of time are late
+	private static final ThreadMXBean CPU=ManagementFactory.getThreadMXBean();
+	private static final VarHandle REPLIED_STEP;
+	
+	static
+	{
+		try
+		{
+			REPLIED_STEP=MethodHandles.lookup().findVarHandle(Player.class,"repliedStep",int.class);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+	
+	private final boolean simulatedClock;
+	private final ExecutorService matchThreads,callThreads;
+	private final Replies pacManReplies=new Replies(),ghostReplies=new Replies();
+
+	//Engine playing in real time
+	public MatchEngine()
+	{
+		this(false);
+	}
+
+	public MatchEngine(boolean simulatedClock)
+	{
+		this.simulatedClock=simulatedClock;
+		this.matchThreads=Executors.newVirtualThreadPerTaskExecutor();
+
+		if(simulatedClock)
+		{
+			if(!CPU.isThreadCpuTimeSupported())
+				throw new UnsupportedOperationException("the simulated clock requires thread CPU time measurement");
+
+			CPU.setThreadCpuTimeEnabled(true);
+			callThreads=Executors.newCachedThreadPool();
+		}
+		else
+			callThreads=matchThreads;
+	}
+
+	//Replies of the Ms Pac-Man controllers of all matches played so far
+	public Replies getPacManReplies()
+	{
+		return pacManReplies;
+	}
+	
+	//Replies of the ghost controllers of all matches played so far
+	public Replies getGhostReplies()
+	{
+		return ghostReplies;
+	}
+
+	//Starts a match on a new game with the seed supplied; the future returns the game once it is over
+	public Future<_G_> submit(PacManController pacManController,GhostController ghostController,long seed)
+	{
+		return matchThreads.submit(()->
+		{
+			_G_ game=new _G_();
+			game.newGame(seed);
+			play(pacManController,ghostController,game,null);
+
+			return game;
+		});
+	}
+
+	/*
+	 * Plays the game supplied until it is over (or the calling thread is interrupted, or the engine closed). The
+	 * listener, if any, is called after every step with the actions taken (see Game.advanceGame(-,-)).
+	 */
+	public void play(PacManController pacManController,GhostController ghostController,_G_ game,Consumer<int[]> listener)
+	{
+		PacMan pacMan=new PacMan(pacManController,pacManReplies);
+		Ghosts ghosts=new Ghosts(ghostController,ghostReplies);
+
+		try
+		{
+			for(int step=0;!game.gameOver();step++)
+			{
+				long due=System.currentTimeMillis()+G.DELAY;
+
+				pacMan.alert(game,step,due);
+				ghosts.alert(game,step,due);
+
+				if(simulatedClock)
+				{
+					pacMan.await(step);
+					ghosts.await(step);
+				}
+				else
+					Thread.sleep(Math.max(due-System.currentTimeMillis(),0));
+
+				int[] actionsTaken=game.advanceGame(pacMan.take(step) ? pacMan.direction : -1,ghosts.take(step) ? ghosts.directions : null);
+
+				if(listener!=null)
+					listener.accept(actionsTaken);
+			}
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(RejectedExecutionException e)
+		{
+			//the engine has been closed: the match is abandoned
+		}
+		finally
+		{
+			pacMan.kill();
+			ghosts.kill();
+		}
+	}
+
+	//Interrupts all matches and controller calls still running
+	public void close()
+	{
+		matchThreads.shutdownNow();
+		callThreads.shutdownNow();
+	}
+
+	/*
+	 * Counts the replies of the controllers of one side (Ms Pac-Man or the ghosts) across all matches of an engine.
+	 * Every call either replies in time, replies late (its reply is dropped) or fails (throws an exception).
+	 */
+	public static final class Replies
+	{
+		private final LongAdder calls=new LongAdder(),onTime=new LongAdder(),late=new LongAdder(),missedSteps=new LongAdder();
+		
+		//Number of times the controllers have been called
+		public long getCalls()
+		{
+			return calls.sum();
+		}
+		
+		//Number of replies used in the step they were computed for
+		public long getOnTime()
+		{
+			return onTime.sum();
+		}
+		
+		//Number of replies dropped because they arrived after their step
+		public long getLate()
+		{
+			return late.sum();
+		}
+		
+		//Number of steps played without a reply (late, failed, or because the controller was still busy)
+		public long getMissedSteps()
+		{
+			return missedSteps.sum();
+		}
+		
+		public String toString()
+		{
+			return "calls "+getCalls()+", on time "+getOnTime()+", late "+getLate()+", steps missed "+getMissedSteps();
+		}
+	}
+
+	/*
+	 * Wraps a controller for the timed execution: each call runs on its own thread and posts its reply, stamped 
+	 * with the step it was made for, for the match to take.
+	 */
+	private abstract class Player
+	{
+		private final Replies replies;
+		private Game copy;
+		private Future<?> call;
+		private int firstStep;							//step for which the current call was made
+		private boolean taken;							//whether the reply to the current call has been used
+		private long calledAt;							//wall-clock time of the current call, in nanoseconds
+		private volatile long worker=-1,cpuAtStart;		//thread running the current call and its CPU time when the call started
+		@SuppressWarnings("unused")
+		private int repliedStep=-1;						//stamp of the latest reply, only accessed through REPLIED_STEP
+		
+		protected Player(Replies replies)
+		{
+			this.replies=replies;
+		}
+		
+		//Asks the controller and stores its reply (which is published by the caller)
+		protected abstract void act(Game game,long due);
+
+		//Calls the controller for the step supplied, unless it is still busy with an earlier step
+		void alert(_G_ game,int step,long due)
+		{
+			if(call!=null && !call.isDone())
+				return;
+			
+			//the previous call has replied, but too late to be used
+			if(call!=null && !taken && (int)REPLIED_STEP.getAcquire(this)==firstStep)
+				replies.late.increment();
+
+			//the previous call is over, so its copy may be re-used
+			if(copy==null)
+				copy=game.copy();
+			else
+				game.copyInto(copy);
+
+			Game state=copy;
+			firstStep=step;
+			taken=false;
+			calledAt=System.nanoTime();
+			worker=-1;
+			replies.calls.increment();
+
+			call=callThreads.submit(()->
+			{
+				if(simulatedClock)
+				{
+					cpuAtStart=CPU.getCurrentThreadCpuTime();
+					worker=Thread.currentThread().threadId();
+				}
+				
+				try
+				{
+					act(state,due);
+					REPLIED_STEP.setRelease(this,step);
+				}
+				catch(RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			});
+		}
+		
+		//Whether a reply for the step supplied is in; if so, it may be used (once)
+		boolean take(int step)
+		{
+			if(!taken && (int)REPLIED_STEP.getAcquire(this)==step)
+			{
+				taken=true;
+				replies.onTime.increment();
+				
+				return true;
+			}
+			
+			replies.missedSteps.increment();
+			
+			return false;
+		}
+		
+		//Simulated clock: waits until the current call has returned or has used up its CPU time up to the end of the step supplied
+		void await(int step) throws InterruptedException
+		{
+			if(call==null)
+				return;
+			
+			long budget=(step-firstStep+1)*DELAY_NANOS;
+			
+			while(!call.isDone())
+			{
+				long remaining=budget-getCpuTime();
+				
+				if(remaining<=0 || System.nanoTime()-calledAt>=WALL_CLOCK_FACTOR*budget)
+					return;
+				
+				try
+				{
+					call.get(remaining,TimeUnit.NANOSECONDS);	//the CPU time used cannot grow faster than the wall-clock time
+				}
+				catch(TimeoutException|ExecutionException|CancellationException e)
+				{
+					//checked again above
+				}
+			}
+		}
+		
+		//CPU time used by the current call so far (0 if it has not started yet)
+		private long getCpuTime()
+		{
+			long thread=worker;
+			
+			if(thread==-1)
+				return 0;
+			
+			long cpuTime=CPU.getThreadCpuTime(thread);
+			
+			return cpuTime<0 ? 0 : cpuTime-cpuAtStart;	//negative once the thread has terminated
+		}
+
+		//Ends the match for this controller: the current call is interrupted, and counted as late if it has replied in vain
+		void kill()
+		{
+			if(call==null)
+				return;
+			
+			call.cancel(true);
+			
+			if(!taken && (int)REPLIED_STEP.getAcquire(this)==firstStep)
+				replies.late.increment();
+		}
+	}
+
+	//Wraps the Ms Pac-Man controller
+	private class PacMan extends Player
+	{
+		private final PacManController pacMan;
+		private int direction;	//latest reply (published through the stamp)
+
+		private PacMan(PacManController pacMan,Replies replies)
+		{
+			super(replies);
+			this.pacMan=pacMan;
+		}
+
+		protected void act(Game game,long due)
+		{
+			direction=pacMan.getAction(game,due);
+		}
+	}
+
+	//Wraps the ghosts controller
+	private class Ghosts extends Player
+	{
+		private final GhostController ghosts;
+		private int[] directions;	//latest reply (published through the stamp)
+
+		private Ghosts(GhostController ghosts,Replies replies)
+		{
+			super(replies);
+			this.ghosts=ghosts;
+		}
+
+		protected void act(Game game,long due)
+		{
+			directions=ghosts.getActions(game,due);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package game;
+
+/*
+ * The outcome of a paired experiment (see Exec.runPairedExperiment): two Ms Pac-Man controllers that have played
+ * the same games, trial by trial. As both games of a trial share their seed, they meet the same random events
+ * (ghost reversals, random numbers of the ghosts) at the same steps. The part of the luck that affects both games
+ * alike cancels out in the difference of their scores, which can then be estimated from fewer games than by 
+ * comparing two independent experiments; how large that part is depends on how alike the controllers play. For
+ * instance, against Legacy2TheReckoning, NearestPillPacMan and a copy of it that makes 2% random moves need about
+ * 3 times fewer games paired, while NearestPillPacMan and MsPacManAgent, whose games soon differ, gain nothing.
+ *
+ * The comparison is a paired t-test on the differences (first minus second): mean difference, its 95% confidence
+ * interval and whether it is significant (the interval excludes 0). getVarianceReduction() tells how many times
+ * more games two independent experiments would have needed for the same precision.
+ */
+public class PairedResult
+{
+	private final String firstName,secondName;
+	private final ExperimentResult first,second;
+	private final int[] differences;
+
+	public PairedResult(String firstName,ExperimentResult first,String secondName,ExperimentResult second)
+	{
+		if(first.getTrials()!=second.getTrials())
+			throw new IllegalArgumentException("the experiments must have the same trials");
+
+		this.firstName=firstName;
+		this.first=first;
+		this.secondName=secondName;
+		this.second=second;
+		this.differences=new int[first.getTrials()];
+
+		for(int i=0;i<differences.length;i++)
+			differences[i]=first.getScore(i)-second.getScore(i);
+	}
+
+	public ExperimentResult getFirst()
+	{
+		return first;
+	}
+
+	public ExperimentResult getSecond()
+	{
+		return second;
+	}
+
+	//Score of the first controller minus that of the second, in the trial specified
+	public int getDifference(int trial)
+	{
+		return differences[trial];
+	}
+
+	public double getMeanDifference()
+	{
+		return ExperimentResult.mean(differences);
+	}
+
+	//Sample standard deviation of the differences
+	public double getStandardDeviation()
+	{
+		return ExperimentResult.standardDeviation(differences);
+	}
+
+	//Half-width of the 95% confidence interval of the mean difference
+	public double getConfidenceInterval()
+	{
+		return ExperimentResult.confidenceInterval(getStandardDeviation(),differences.length);
+	}
+
+	//Paired t statistic of the mean difference (infinite if all differences are the same, but not 0)
+	public double getT()
+	{
+		double standardError=getStandardDeviation()/Math.sqrt(differences.length);
+
+		return standardError==0 ? (getMeanDifference()==0 ? 0 : Math.copySign(Double.POSITIVE_INFINITY,getMeanDifference())) : getMeanDifference()/standardError;
+	}
+
+	//Whether the difference is significant at the 5% level (two-sided), i.e. its confidence interval excludes 0
+	public boolean isSignificant()
+	{
+		return differences.length>1 && Math.abs(getT())>ExperimentResult.criticalValue(differences.length-1);
+	}
+
+	//Variance of the difference of two independent experiments divided by that of the paired one (>1: pairing helped)
+	public double getVarianceReduction()
+	{
+		double paired=getStandardDeviation()*getStandardDeviation();
+		double independent=first.getStandardDeviation()*first.getStandardDeviation()+second.getStandardDeviation()*second.getStandardDeviation();
+
+		return paired==0 ? Double.POSITIVE_INFINITY : independent/paired;
+	}
+
+	public String toString()
+	{
+		StringBuilder summary=new StringBuilder();
+		summary.append(firstName).append(":\n").append(first).append("\n\n");
+		summary.append(secondName).append(":\n").append(second).append("\n\n");
+		summary.append(String.format("%s - %s: %.1f +/- %.1f (95%% CI), sd %.1f, t %.2f, %s%n",firstName,secondName,getMeanDifference(),
+				getConfidenceInterval(),getStandardDeviation(),getT(),isSignificant() ? "significant (p < 0.05)" : "not significant"));
+		summary.append(String.format("variance reduction %.2f (independent experiments would need as many times more games)",getVarianceReduction()));
+
+		return summary.toString();
+	}
+}
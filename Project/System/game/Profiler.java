@@ -0,0 +1,262 @@
+package game;
+
+import game.controllers.GhostController;
+import game.controllers.GhostControllerWrapper;
+import game.controllers.PacManController;
+import game.controllers.PacManControllerWrapper;
+import game.core.Game;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+/*
+ * Optional profiling of the controllers (see Exec.setProfiler(-)): measures the memory allocated and the CPU time
+ * used by every decision, per controller, using the thread statistics of the JVM. A run may also be given an
+ * allocation budget: any decision that allocates more than that many bytes fails the run once it is over
+ * (a budget of 0 enforces controllers that never allocate, and thus never cause garbage collections).
+ *
+ * While a run is profiled, a flight recording samples the controllers' threads, so that CPU time and allocations
+ * can also be broken down by method: every sample is attributed to the top-most method of a controller's class
+ * (i.e., of the package of a controller that has been wrapped) on the stack.
+ *
+ * The JVM cannot measure virtual threads, so calls made on them (the real-time mode of MatchEngine) are counted
+ * but not measured; use the untimed modes or the simulated clock instead.
+ */
+public class Profiler
+{
+	private static final com.sun.management.ThreadMXBean THREADS=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+	private static final int METHODS_SHOWN=20;
+
+	private final long allocationBudget;
+	private final Map<String,Controller> controllers=new ConcurrentSkipListMap<String,Controller>();
+	private final Set<String> packages=ConcurrentHashMap.newKeySet();
+	private final LongAdder budgetViolations=new LongAdder();
+	private final AtomicReference<String> firstViolation=new AtomicReference<String>();
+	private final Map<String,long[]> methods=new HashMap<String,long[]>();	//method -> {cpu samples, bytes allocated (sampled)}
+	private Recording recording;
+
+	//Profiler without allocation budget
+	public Profiler()
+	{
+		this(Long.MAX_VALUE);
+	}
+
+	//Profiler that fails runs in which a controller allocates more than the number of bytes supplied in a single decision
+	public Profiler(long allocationBudget)
+	{
+		this.allocationBudget=allocationBudget;
+
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+		THREADS.setThreadCpuTimeEnabled(true);
+	}
+
+	//Returns the controller supplied, profiled under the name supplied
+	public PacManController wrapPacMan(PacManController pacMan,String name)
+	{
+		Controller controller=get(pacMan,name);
+
+		return new PacManControllerWrapper(pacMan)
+		{
+			public int getAction(Game game,long timeDue)
+			{
+				long bytes=THREADS.getCurrentThreadAllocatedBytes(),cpuTime=THREADS.getCurrentThreadCpuTime();
+				int direction=pacMan.getAction(game,timeDue);
+				controller.record(name,bytes,cpuTime);
+
+				return direction;
+			}
+		};
+	}
+
+	//Returns the controller supplied, profiled under the name supplied
+	public GhostController wrapGhosts(GhostController ghosts,String name)
+	{
+		Controller controller=get(ghosts,name);
+
+		return new GhostControllerWrapper(ghosts)
+		{
+			public int[] getActions(Game game,long timeDue)
+			{
+				long bytes=THREADS.getCurrentThreadAllocatedBytes(),cpuTime=THREADS.getCurrentThreadCpuTime();
+				int[] directions=ghosts.getActions(game,timeDue);
+				controller.record(name,bytes,cpuTime);
+
+				return directions;
+			}
+		};
+	}
+
+	//Starts sampling the methods of the controllers (called at the start of every run)
+	public synchronized void start()
+	{
+		recording=new Recording();
+		recording.enable("jdk.ExecutionSample").withPeriod(Duration.ofMillis(1)).withStackTrace();
+		recording.enable("jdk.ObjectAllocationSample").with("throttle","10000/s").withStackTrace();
+		recording.start();
+	}
+
+	//Stops sampling and adds the samples to the breakdown per method (called at the end of every run)
+	public synchronized void stop()
+	{
+		if(recording==null)
+			return;
+
+		try
+		{
+			Path file=Files.createTempFile("profile",".jfr");
+			recording.stop();
+			recording.dump(file);
+
+			for(RecordedEvent event : RecordingFile.readAllEvents(file))
+			{
+				String method=getControllerMethod(event);
+
+				if(method==null)
+					continue;
+
+				long[] totals=methods.computeIfAbsent(method,key->new long[2]);
+
+				if(event.getEventType().getName().equals("jdk.ExecutionSample"))
+					totals[0]++;
+				else
+					totals[1]+=event.getLong("weight");
+			}
+
+			Files.delete(file);
+		}
+		catch(IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+		finally
+		{
+			recording.close();
+			recording=null;
+		}
+	}
+
+	//Number of decisions that went over the allocation budget
+	public long getBudgetViolations()
+	{
+		return budgetViolations.sum();
+	}
+
+	//Fails (with an IllegalStateException) if any decision went over the allocation budget
+	public void checkAllocationBudget()
+	{
+		if(getBudgetViolations()>0)
+			throw new IllegalStateException(getBudgetViolations()+" decision(s) over the allocation budget of "+allocationBudget+" bytes, first: "+firstViolation.get());
+	}
+
+	public synchronized String toString()
+	{
+		StringBuilder profile=new StringBuilder(String.format("%-24s %9s %9s %12s %12s %12s %10s %10s %10s%n","controller","calls","measured",
+				"bytes/call","p99 bytes","max bytes","cpu(us)","p99 cpu","max cpu"));
+
+		for(Map.Entry<String,Controller> entry : controllers.entrySet())
+		{
+			Controller controller=entry.getValue();
+			long measured=controller.bytes.getCount(),timed=controller.cpuTime.getCount();
+			double meanBytes=measured==0 ? 0 : controller.totalBytes.sum()/(double)measured;
+			double meanCpuTime=timed==0 ? 0 : controller.totalCpuTime.sum()/1e3/timed;
+
+			profile.append(String.format("%-24s %9d %9d %12.1f %12d %12d %10.1f %10.1f %10.1f%n",entry.getKey(),controller.calls.sum(),measured,
+					meanBytes,controller.bytes.getPercentile(99),controller.bytes.getMax(),
+					meanCpuTime,controller.cpuTime.getPercentile(99)/1e3,controller.cpuTime.getMax()/1e3));
+		}
+
+		if(allocationBudget!=Long.MAX_VALUE)
+			profile.append("decisions over the allocation budget of ").append(allocationBudget).append(" bytes: ").append(getBudgetViolations()).append('\n');
+
+		if(!methods.isEmpty())
+		{
+			List<Map.Entry<String,long[]>> sorted=new ArrayList<Map.Entry<String,long[]>>(methods.entrySet());
+			sorted.sort((a,b)->a.getValue()[0]!=b.getValue()[0] ? Long.compare(b.getValue()[0],a.getValue()[0]) : Long.compare(b.getValue()[1],a.getValue()[1]));
+
+			profile.append(String.format("%-80s %12s %16s%n","method (sampled)","cpu samples","bytes allocated"));
+
+			for(int i=0;i<Math.min(METHODS_SHOWN,sorted.size());i++)
+				profile.append(String.format("%-80s %12d %16d%n",sorted.get(i).getKey(),sorted.get(i).getValue()[0],sorted.get(i).getValue()[1]));
+		}
+
+		return profile.toString();
+	}
+
+	private Controller get(Object controller,String name)
+	{
+		packages.add(controller.getClass().getPackageName());
+
+		return controllers.computeIfAbsent(name,key->new Controller());
+	}
+
+	//Top-most method on the stack that belongs to the package of a controller, or null if there is none
+	private String getControllerMethod(RecordedEvent event)
+	{
+		if(event.getStackTrace()==null)
+			return null;
+
+		for(RecordedFrame frame : event.getStackTrace().getFrames())
+		{
+			if(!frame.isJavaFrame())
+				continue;
+
+			String type=frame.getMethod().getType().getName();
+			int lastDot=type.lastIndexOf('.');
+
+			if(packages.contains(lastDot<0 ? "" : type.substring(0,lastDot)))
+				return type+"."+frame.getMethod().getName();
+		}
+
+		return null;
+	}
+
+	//The measurements of one controller (class)
+	private class Controller
+	{
+		private final LatencyHistogram bytes=new LatencyHistogram(),cpuTime=new LatencyHistogram();
+		private final LongAdder calls=new LongAdder(),totalBytes=new LongAdder(),totalCpuTime=new LongAdder();
+
+		//Records the decision that started with the allocated bytes and CPU time supplied (both -1 on virtual threads)
+		private void record(String name,long bytesBefore,long cpuTimeBefore)
+		{
+			long bytesAfter=THREADS.getCurrentThreadAllocatedBytes(),cpuTimeAfter=THREADS.getCurrentThreadCpuTime();
+			calls.increment();
+
+			if(bytesBefore<0 || bytesAfter<0)
+				return;
+
+			long allocated=bytesAfter-bytesBefore;
+			bytes.record(allocated);
+			totalBytes.add(allocated);
+
+			if(cpuTimeBefore>=0 && cpuTimeAfter>=0)
+			{
+				cpuTime.record(cpuTimeAfter-cpuTimeBefore);
+				totalCpuTime.add(cpuTimeAfter-cpuTimeBefore);
+			}
+
+			if(allocated>allocationBudget)
+			{
+				budgetViolations.increment();
+				firstViolation.compareAndSet(null,name+" allocated "+allocated+" bytes");
+			}
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package game;
+
+import game.core.G;
+import game.core.Game;
+import game.core.Replay;
+import game.core._RG_;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Re-simulates recorded games (see ReplayRecorder) without visuals or delays, spread across all cores, verifies them
+ * and summarises them. A game is verified if every keyframe of its recording, including the final one (score, level
+ * and the rest of the state), is reproduced by replaying its steps with _RG_ from the start (for compact recordings,
+ * see CompactReplayRecorder, every state hash of the recording). The summary of a game
+ * lists the steps at which Ms Pac-Man lost a life, the number of ghosts she ate and the pills she ate per level.
+ * Run from the directory that contains the data folder, with the replay files or directories of replay files:
+ *
+ * java game.ReplayAnalyzer <file or directory>...
+ */
+public class ReplayAnalyzer
+{
+	public static void main(String[] args) throws IOException
+	{
+		List<Path> files=new ArrayList<Path>();
+
+		for(String arg : args)
+		{
+			Path path=Path.of(arg);
+
+			if(Files.isDirectory(path))
+			{
+				try(Stream<Path> content=Files.list(path))
+				{
+					content.filter(Files::isRegularFile).sorted().forEach(files::add);
+				}
+			}
+			else
+				files.add(path);
+		}
+
+		long start=System.nanoTime();
+		List<Summary> summaries=analyze(files);
+		double seconds=(System.nanoTime()-start)/1e9;
+		long steps=0;
+		int verified=0;
+
+		for(Summary summary : summaries)
+		{
+			System.out.println(summary);
+			steps+=summary.getSteps();
+
+			if(summary.getStatus()==Status.VERIFIED)
+				verified++;
+		}
+
+		System.out.printf("%d games, %d verified, %d steps in %.2f s (%.0f steps/s)%n",summaries.size(),verified,steps,seconds,steps/seconds);
+	}
+
+	//Analyses the replays supplied in parallel; the summaries are in the same order as the files
+	public static List<Summary> analyze(List<Path> files)
+	{
+		return files.parallelStream().map(ReplayAnalyzer::analyze).collect(Collectors.toList());
+	}
+
+	//Re-simulates the replay supplied
+	public static Summary analyze(Path file)
+	{
+		Summary summary=new Summary(file);
+		Replay replay;
+
+		try
+		{
+			replay=new Replay(file.toString());
+		}
+		catch(UncheckedIOException|IllegalStateException e)
+		{
+			summary.status=Status.UNREADABLE;
+
+			return summary;
+		}
+
+		_RG_ game=replay.getGame(0);
+		int[] ghostActions=new int[G.NUM_GHOSTS];
+		boolean[] edible=new boolean[G.NUM_GHOSTS];
+		int[] deaths=new int[G.NUM_LIVES+1];	//at most one extra life
+		boolean consistent=replay.isConsistent(game);
+
+		while(game.getTotalTime()<replay.getNumSteps() && !game.gameOver())
+		{
+			int step=game.getTotalTime(),level=game.getCurLevel(),lives=game.getLivesRemaining();
+			int pacManAction=replay.getPacManAction(step);
+
+			for(int i=0;i<G.NUM_GHOSTS;i++)
+			{
+				ghostActions[i]=replay.getGhostAction(step,i);
+				edible[i]=game.getLairTime(i)==0 && game.getEdibleTime(i)>0;
+			}
+
+			//_RG_ applies the recorded actions as they are, so Ms Pac-Man's next location is known beforehand
+			int next=pacManAction>=0 ? game.getNeighbour(game.getCurPacManLoc(),pacManAction) : -1;
+
+			if(next>=0)
+			{
+				int pill=game.getPillIndex(next),powerPill=game.getPowerPillIndex(next);
+
+				if(pill>=0 && game.checkPill(pill))
+					summary.pills[level]++;
+
+				if(powerPill>=0 && game.checkPowerPill(powerPill))
+					summary.powerPills[level]++;
+			}
+
+			try
+			{
+				game.advanceGame(pacManAction,ghostActions);
+			}
+			catch(RuntimeException e)
+			{
+				//_RG_ does not check the actions: one that is impossible from the state reached may fail
+				consistent=false;
+				summary.divergence=step;
+				break;
+			}
+
+			if(game.getLivesRemaining()<lives)
+				deaths[summary.numDeaths++]=step;
+			//lair times are reset with the level and after a death, so ghosts eaten are only counted in other steps
+			else if(game.getCurLevel()==level)
+				for(int i=0;i<G.NUM_GHOSTS;i++)
+					if(edible[i] && game.getLairTime(i)>0)
+						summary.ghostsEaten++;
+
+			if(consistent && !replay.isConsistent(game))
+			{
+				consistent=false;
+				summary.divergence=game.getTotalTime();
+			}
+		}
+
+		summary.steps=game.getTotalTime();
+		summary.score=game.getScore();
+		summary.level=game.getCurLevel();
+		summary.deaths=Arrays.copyOf(deaths,summary.numDeaths);
+
+		if(!consistent)
+			summary.status=Status.DIVERGED;
+		else if(!replay.hasFinalState())
+			summary.status=Status.UNVERIFIABLE;
+		else
+			summary.status=Status.VERIFIED;
+
+		return summary;
+	}
+
+	public enum Status
+	{
+		VERIFIED,		//all keyframes, including the final one, reproduced
+		DIVERGED,		//a keyframe was not reproduced (see Summary.getDivergence())
+		UNVERIFIABLE,	//no final keyframe (older or incomplete recording); the keyframes there are were reproduced
+		UNREADABLE		//not a recording, of an unknown version, or a compact one that cannot be played again (e.g., its controllers could not be created)
+	}
+
+	//What happened in a recorded game, according to its re-simulation
+	public static final class Summary
+	{
+		private final Path file;
+		private Status status;
+		private int steps,score,level,divergence=-1,numDeaths,ghostsEaten;
+		private int[] deaths=new int[0];
+		private final int[] pills=new int[Game.MAX_LEVELS],powerPills=new int[Game.MAX_LEVELS];
+
+		private Summary(Path file)
+		{
+			this.file=file;
+		}
+
+		public Path getFile()
+		{
+			return file;
+		}
+
+		public Status getStatus()
+		{
+			return status;
+		}
+
+		public int getSteps()
+		{
+			return steps;
+		}
+
+		public int getScore()
+		{
+			return score;
+		}
+
+		//Level (starting at 0) the game ended in
+		public int getLevel()
+		{
+			return level;
+		}
+
+		//Time of the first keyframe that was not reproduced (or of the step that could not be replayed), or -1 if there is none
+		public int getDivergence()
+		{
+			return divergence;
+		}
+
+		//Steps (G.getTotalTime()) in which Ms Pac-Man lost a life
+		public int[] getDeaths()
+		{
+			return deaths.clone();
+		}
+
+		public int getGhostsEaten()
+		{
+			return ghostsEaten;
+		}
+
+		//Pills eaten in the level supplied (starting at 0)
+		public int getPillsEaten(int level)
+		{
+			return pills[level];
+		}
+
+		//Power pills eaten in the level supplied (starting at 0)
+		public int getPowerPillsEaten(int level)
+		{
+			return powerPills[level];
+		}
+
+		public String toString()
+		{
+			StringBuilder pillsEaten=new StringBuilder();
+
+			for(int i=0;i<=level && i<pills.length;i++)
+				pillsEaten.append(i==0 ? "" : " ").append(pills[i]).append('+').append(powerPills[i]);
+
+			return String.format("%s: %s%s, %d steps, score %d, level %d, deaths at %s, %d ghosts eaten, pills per level %s",file,status,
+					divergence>=0 ? " at "+divergence : "",steps,score,level+1,Arrays.toString(deaths),ghostsEaten,pillsEaten);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package game;
+
+/*
+ * When to stop an adaptive experiment (see Exec.runExperiment(-,-,StoppingRule,-) and Exec.runPairedExperiment(-,-,-,
+ * StoppingRule,-)): games are played until the 95% confidence interval of the mean score (or of the mean difference
+ * of a paired experiment) is no wider than the target, until a paired experiment finds a significant difference,
+ * or until the maximum number of games has been played or the time is up, whichever comes first.
+ *
+ * The rule is only checked at fixed numbers of games ("looks"), equally spaced up to the maximum and at least
+ * MIN_TRIALS apart, so that the outcome only depends on the seed (unless the time runs out), not on the number of
+ * cores. Testing for significance at every look would find differences that are not there more often than 5% of
+ * the time, so paired experiments use Pocock's boundary instead: a larger critical value, the same at all looks,
+ * that keeps the overall error at 5% for equally spaced looks.
+ */
+public class StoppingRule
+{
+	public static final int MIN_TRIALS=20;	//games played before the first look and between looks
+	public static final int MAX_LOOKS=10;
+
+	//Pocock's critical values (two-sided, overall 5%) for 1 to MAX_LOOKS equally spaced looks, for normally distributed means
+	private static final double[] POCOCK_CRITICAL_VALUES={1.960,2.178,2.289,2.361,2.413,2.453,2.485,2.512,2.535,2.555};
+	private static final double NORMAL_CRITICAL_VALUE=1.959964;
+
+	private final double targetConfidenceInterval;
+	private final int maxTrials;
+	private final long maxMillis;
+	private final int[] looks;
+
+	//Stops once the half-width of the confidence interval is at most the target (0 to ignore), after maxTrials games, or after maxMillis milliseconds (Long.MAX_VALUE for no time limit)
+	public StoppingRule(double targetConfidenceInterval,int maxTrials,long maxMillis)
+	{
+		if(maxTrials<1)
+			throw new IllegalArgumentException("at least one game must be played");
+		
+		if(maxMillis<=0)
+			throw new IllegalArgumentException("the time limit must be positive (Long.MAX_VALUE for none)");
+
+		this.targetConfidenceInterval=targetConfidenceInterval;
+		this.maxTrials=maxTrials;
+		this.maxMillis=maxMillis;
+
+		int numLooks=Math.max(Math.min(maxTrials/MIN_TRIALS,MAX_LOOKS),1);
+		looks=new int[numLooks];
+
+		for(int i=0;i<numLooks;i++)
+			looks[i]=(int)((long)maxTrials*(i+1)/numLooks);
+	}
+
+	public double getTargetConfidenceInterval()
+	{
+		return targetConfidenceInterval;
+	}
+
+	public int getMaxTrials()
+	{
+		return maxTrials;
+	}
+
+	public long getMaxMillis()
+	{
+		return maxMillis;
+	}
+
+	//Numbers of games after which the rule is checked, in increasing order (the last is the maximum)
+	public int[] getLooks()
+	{
+		return looks.clone();
+	}
+
+	//Whether the experiment may stop with the result supplied
+	public boolean isMet(ExperimentResult result)
+	{
+		return result.getConfidenceInterval()<=targetConfidenceInterval;
+	}
+
+	//Whether the paired experiment may stop with the result supplied: the difference is significant or known precisely enough
+	public boolean isMet(PairedResult result)
+	{
+		return isSignificant(result) || result.getConfidenceInterval()<=targetConfidenceInterval;
+	}
+
+	//Whether the difference is significant across all looks (Pocock's boundary, adjusted for the number of games as Student's t)
+	public boolean isSignificant(PairedResult result)
+	{
+		int trials=result.getFirst().getTrials();
+
+		if(trials<2)
+			return false;
+
+		double criticalValue=POCOCK_CRITICAL_VALUES[looks.length-1]*ExperimentResult.criticalValue(trials-1)/NORMAL_CRITICAL_VALUE;
+
+		return Math.abs(result.getT())>criticalValue;
+	}
+
+	//Why the experiment that gave the result supplied has stopped
+	public String getReason(ExperimentResult result)
+	{
+		if(isMet(result))
+			return "confidence interval reached after "+result.getTrials()+" games";
+
+		return getLimitReason(result.getTrials());
+	}
+
+	//Why the paired experiment that gave the result supplied has stopped
+	public String getReason(PairedResult result)
+	{
+		if(isSignificant(result))
+			return "significant difference after "+result.getFirst().getTrials()+" games";
+
+		if(isMet(result))
+			return "confidence interval reached after "+result.getFirst().getTrials()+" games";
+
+		return getLimitReason(result.getFirst().getTrials());
+	}
+
+	private String getLimitReason(int trials)
+	{
+		return trials>=maxTrials ? "maximum of "+maxTrials+" games reached" : "time limit of "+maxMillis+" ms reached after "+trials+" games";
+	}
+
+	public String toString()
+	{
+		if(maxMillis==Long.MAX_VALUE)
+			return String.format("stop at +/- %.1f (95%% CI) or after %d games",targetConfidenceInterval,maxTrials);
+		
+		return String.format("stop at +/- %.1f (95%% CI), after %d games or after %d ms",targetConfidenceInterval,maxTrials,maxMillis);
+	}
+}
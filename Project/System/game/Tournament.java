@@ -0,0 +1,351 @@
+package game;
+
+import game.controllers.GhostController;
+import game.controllers.GhostControllerWrapper;
+import game.controllers.PacManController;
+import game.controllers.PacManControllerWrapper;
+import game.core.Game;
+import game.core.GameRandom;
+import game.core._G_;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.IntStream;
+
+/*
+ * Plays every Ms Pac-Man controller against every ghost controller (round robin), without time limits, and prints
+ * the matrix of average scores with their 95% confidence intervals. The controllers are discovered on the class
+ * path: all public classes with a public constructor without arguments (or with a single boolean argument, which
+ * gives two entrants) in the packages listed below, including those in jar files (e.g., afi.MsPacManAFI).
+ *
+ * All games of all pairings are spread across all cores. Every pairing plays the same trials, i.e. trial i of
+ * every pairing uses the same seed, so differences between controllers are not blurred by different games. As in
+ * MatchEngine, a decision that fails (throws an exception) is a missed step: the game goes on and the failures are
+ * listed below the matrix. Run from the directory that contains the data folder:
+ *
+ * java game.Tournament [trials] [seed] [journal]
+ *
+ * With a journal (see ExperimentJournal), every game is recorded as soon as it is over and the games already in the
+ * journal are not played again, so an interrupted tournament resumes where it stopped when run again with the same
+ * seed and journal (failed decisions are not recorded, so they are only listed for the games played in this run).
+ */
+public class Tournament
+{
+	public static final String[] PACKAGES={"game.controllers.examples","fs_student","afi"};
+	public static final Set<String> EXCLUDED=Set.of("NearestPillPacManVS");	//same as NearestPillPacMan, but draws debug visuals
+
+	private final Map<String,Supplier<PacManController>> pacMen=new TreeMap<String,Supplier<PacManController>>();
+	private final Map<String,Supplier<GhostController>> ghosts=new TreeMap<String,Supplier<GhostController>>();
+	private ExperimentResult[][] results;
+	private long[][] failures;
+
+	public static void main(String[] args)
+	{
+		int trials=args.length>0 ? Integer.parseInt(args[0]) : 100;
+		long seed=args.length>1 ? Long.parseLong(args[1]) : GameRandom.newSeed();
+
+		Tournament tournament=new Tournament();
+		tournament.discover();
+
+		long start=System.nanoTime();
+
+		if(args.length>2)
+		{
+			try(ExperimentJournal journal=new ExperimentJournal(Path.of(args[2])))
+			{
+				tournament.play(trials,seed,journal);
+			}
+			catch(IOException ioe)
+			{
+				ioe.printStackTrace();
+				return;
+			}
+		}
+		else
+			tournament.play(trials,seed);
+
+		System.out.println(tournament);
+		System.out.printf("seed %d, %d games in %.1f s%n",seed,trials*tournament.pacMen.size()*tournament.ghosts.size(),(System.nanoTime()-start)/1e9);
+	}
+
+	//Adds a Ms Pac-Man controller under the name supplied
+	public void addPacMan(String name,Supplier<PacManController> pacMan)
+	{
+		pacMen.put(name,pacMan);
+	}
+
+	//Adds a ghost controller under the name supplied
+	public void addGhosts(String name,Supplier<GhostController> ghostTeam)
+	{
+		ghosts.put(name,ghostTeam);
+	}
+
+	//Adds all controllers found in PACKAGES on the class path
+	public void discover()
+	{
+		for(String packageName : PACKAGES)
+			for(Class<?> type : findClasses(packageName))
+				add(type);
+	}
+
+	//Plays all pairings; the results are then available from getResult(-,-)
+	public void play(int trials,long seed)
+	{
+		play(trials,seed,null);
+	}
+
+	//Same as play(-,-), but only plays the games that are not in the journal supplied (if any), and records them
+	public void play(int trials,long seed,ExperimentJournal journal)
+	{
+		List<String> pacManNames=new ArrayList<String>(pacMen.keySet()),ghostNames=new ArrayList<String>(ghosts.keySet());
+		int pairings=pacManNames.size()*ghostNames.size();
+		long[] seeds=Exec.getTrialSeeds(seed,trials);
+		int[][] scores=new int[pairings][trials],levels=new int[pairings][trials];
+		long[][] times=new long[pairings][trials];
+		AtomicLongArray failed=new AtomicLongArray(pairings);
+
+		//one task per game (rather than per pairing) so that slow pairings do not hold up the others
+		IntStream.range(0,pairings*trials).parallel().forEach(task->
+		{
+			int pairing=task/trials,trial=task%trials;
+			String pacMan=pacManNames.get(pairing/ghostNames.size()),ghostTeam=ghostNames.get(pairing%ghostNames.size());
+
+			if(journal!=null && journal.getScore(pacMan,ghostTeam,seeds[trial])>=0)
+			{
+				scores[pairing][trial]=journal.getScore(pacMan,ghostTeam,seeds[trial]);
+				levels[pairing][trial]=journal.getLevel(pacMan,ghostTeam,seeds[trial]);
+
+				return;
+			}
+
+			long start=System.nanoTime();
+			_G_ game=Exec.playGame(guardPacMan(pacMen.get(pacMan).get(),failed,pairing),guardGhosts(ghosts.get(ghostTeam).get(),failed,pairing),seeds[trial]);
+
+			scores[pairing][trial]=game.getScore();
+			levels[pairing][trial]=game.getCurLevel();
+			times[pairing][trial]=System.nanoTime()-start;
+
+			if(journal!=null)
+				journal.record(pacMan,ghostTeam,seeds[trial],scores[pairing][trial],levels[pairing][trial]);
+		});
+
+		results=new ExperimentResult[pacManNames.size()][ghostNames.size()];
+		failures=new long[pacManNames.size()][ghostNames.size()];
+
+		for(int pairing=0;pairing<pairings;pairing++)
+		{
+			long time=0;
+
+			for(long gameTime : times[pairing])
+				time+=gameTime;
+
+			//the time is the sum of the games' times, so games/s is per core
+			results[pairing/ghostNames.size()][pairing%ghostNames.size()]=new ExperimentResult(scores[pairing],levels[pairing],time);
+			failures[pairing/ghostNames.size()][pairing%ghostNames.size()]=failed.get(pairing);
+		}
+	}
+
+	//Result of the Ms Pac-Man and ghost controllers supplied (by name), or null if they have not played
+	public ExperimentResult getResult(String pacMan,String ghostTeam)
+	{
+		int row=new ArrayList<String>(pacMen.keySet()).indexOf(pacMan),column=new ArrayList<String>(ghosts.keySet()).indexOf(ghostTeam);
+
+		return results==null || row<0 || column<0 ? null : results[row][column];
+	}
+
+	//The matrix of scores: one row per Ms Pac-Man controller, one column per ghost controller
+	public String toString()
+	{
+		if(results==null)
+			return "Ms Pac-Man: "+pacMen.keySet()+"\nghosts: "+ghosts.keySet();
+
+		StringBuilder matrix=new StringBuilder(String.format("%-24s","mean +/- 95% CI"));
+
+		for(String ghostTeam : ghosts.keySet())
+			matrix.append(String.format(" %24s",ghostTeam));
+
+		matrix.append('\n');
+		int row=0;
+
+		for(String pacMan : pacMen.keySet())
+		{
+			matrix.append(String.format("%-24s",pacMan));
+
+			for(ExperimentResult result : results[row++])
+				matrix.append(String.format(" %24s",String.format("%.0f +/- %.0f",result.getMean(),result.getConfidenceInterval())));
+
+			matrix.append('\n');
+		}
+
+		row=0;
+
+		for(String pacMan : pacMen.keySet())
+		{
+			int column=0;
+
+			for(String ghostTeam : ghosts.keySet())
+				if(failures[row][column++]>0)
+					matrix.append(String.format("%s v %s: %d failed decision(s)%n",pacMan,ghostTeam,failures[row][column-1]));
+
+			row++;
+		}
+
+		return matrix.toString();
+	}
+
+	//Returns the controller supplied, with failed decisions (counted) replaced by no action
+	private static PacManController guardPacMan(PacManController pacMan,AtomicLongArray failed,int pairing)
+	{
+		return new PacManControllerWrapper(pacMan)
+		{
+			public int getAction(Game game,long timeDue)
+			{
+				try
+				{
+					return pacMan.getAction(game,timeDue);
+				}
+				catch(RuntimeException e)
+				{
+					failed.incrementAndGet(pairing);
+
+					return -1;
+				}
+			}
+		};
+	}
+
+	//Returns the controller supplied, with failed decisions (counted) replaced by no action
+	private static GhostController guardGhosts(GhostController ghostTeam,AtomicLongArray failed,int pairing)
+	{
+		return new GhostControllerWrapper(ghostTeam)
+		{
+			public int[] getActions(Game game,long timeDue)
+			{
+				try
+				{
+					return ghostTeam.getActions(game,timeDue);
+				}
+				catch(RuntimeException e)
+				{
+					failed.incrementAndGet(pairing);
+
+					return null;
+				}
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private void add(Class<?> type)
+	{
+		if(!Modifier.isPublic(type.getModifiers()) || Modifier.isAbstract(type.getModifiers()) || EXCLUDED.contains(type.getSimpleName()))
+			return;
+
+		if(PacManController.class.isAssignableFrom(type))
+			for(Map.Entry<String,Supplier<Object>> entrant : getEntrants(type).entrySet())
+				pacMen.put(entrant.getKey(),(Supplier<PacManController>)(Supplier<?>)entrant.getValue());
+
+		if(GhostController.class.isAssignableFrom(type))
+			for(Map.Entry<String,Supplier<Object>> entrant : getEntrants(type).entrySet())
+				ghosts.put(entrant.getKey(),(Supplier<GhostController>)(Supplier<?>)entrant.getValue());
+	}
+
+	//One entrant for a constructor without arguments, two for a constructor with a single boolean argument
+	private static Map<String,Supplier<Object>> getEntrants(Class<?> type)
+	{
+		Map<String,Supplier<Object>> entrants=new TreeMap<String,Supplier<Object>>();
+
+		for(Constructor<?> constructor : type.getConstructors())
+		{
+			if(constructor.getParameterCount()==0)
+				entrants.put(type.getSimpleName(),()->newInstance(constructor));
+			else if(constructor.getParameterCount()==1 && constructor.getParameterTypes()[0]==boolean.class)
+			{
+				entrants.put(type.getSimpleName()+"(true)",()->newInstance(constructor,true));
+				entrants.put(type.getSimpleName()+"(false)",()->newInstance(constructor,false));
+			}
+		}
+
+		return entrants;
+	}
+
+	private static Object newInstance(Constructor<?> constructor,Object... arguments)
+	{
+		try
+		{
+			return constructor.newInstance(arguments);
+		}
+		catch(ReflectiveOperationException e)
+		{
+			throw new IllegalStateException("cannot create "+constructor.getDeclaringClass().getName(),e);
+		}
+	}
+
+	//Top-level classes of the package supplied, in the directories and jar files of the class path
+	private static List<Class<?>> findClasses(String packageName)
+	{
+		String path=packageName.replace('.','/');
+		List<String> names=new ArrayList<String>();
+
+		for(String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+		{
+			File file=new File(entry);
+
+			if(file.isDirectory())
+			{
+				String[] files=new File(file,path).list();
+
+				if(files!=null)
+					for(String name : files)
+						if(name.endsWith(".class") && name.indexOf('$')<0)
+							names.add(packageName+"."+name.substring(0,name.length()-6));
+			}
+			else if(file.isFile() && entry.endsWith(".jar"))
+			{
+				try(JarFile jar=new JarFile(file))
+				{
+					for(Enumeration<JarEntry> entries=jar.entries();entries.hasMoreElements();)
+					{
+						String name=entries.nextElement().getName();
+
+						if(name.startsWith(path+"/") && name.endsWith(".class") && name.indexOf('$')<0 && name.indexOf('/',path.length()+1)<0)
+							names.add(name.substring(0,name.length()-6).replace('/','.'));
+					}
+				}
+				catch(IOException ioe)
+				{
+					ioe.printStackTrace();
+				}
+			}
+		}
+
+		List<Class<?>> classes=new ArrayList<Class<?>>();
+
+		for(String name : names)
+		{
+			try
+			{
+				classes.add(Class.forName(name));
+			}
+			catch(ClassNotFoundException|LinkageError e)
+			{
+				System.err.println("skipping "+name+": "+e);
+			}
+		}
+
+		return classes;
+	}
+}
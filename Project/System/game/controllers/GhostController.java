@@ -7,8 +7,21 @@ import game.core.Game;
  * required is getActions(-), which returns the direction to be taken: 
  * Up - Right - Down - Left -> 0 - 1 - 2 - 3
  * Any other number is considered to be a lack of action (Neutral). 
+ *
+ * Controllers are assumed to be deterministic: given the same games (and the same sequence of random numbers from
+ * Game.getRandom()), a new instance takes the same actions. Games played by instances created by the public
+ * no-argument constructor can then be replayed from the seed alone (see ReplayRecorder.open(-)). Controllers whose
+ * actions depend on anything else (the time, a random number generator of their own, a human player, ...) must
+ * override isDeterministic() to return false.
  */
 public interface GhostController
 {
+	//timeDue is the wall-clock time (as System.currentTimeMillis()) by which the reply is needed, whatever the clock of the engine (see MatchEngine)
 	public int[] getActions(Game game,long timeDue);
+	
+	//Whether a new instance of this controller always takes the same actions in the same games (see above)
+	public default boolean isDeterministic()
+	{
+		return true;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package game.controllers;
+
+/*
+ * Base class of the controllers that wrap a ghosts controller to measure or guard its decisions (see game.Latencies,
+ * game.Profiler and game.Tournament). The wrapper is only deterministic if the controller it wraps is.
+ */
+public abstract class GhostControllerWrapper implements GhostController
+{
+	protected final GhostController ghosts;
+	
+	protected GhostControllerWrapper(GhostController ghosts)
+	{
+		this.ghosts=ghosts;
+	}
+	
+	public boolean isDeterministic()
+	{
+		return ghosts.isDeterministic();
+	}
+}
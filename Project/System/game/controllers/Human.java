@@ -25,6 +25,12 @@ public final class Human extends KeyAdapter implements PacManController
         return 4;
     }
 
+    //The actions depend on the keys pressed
+    public boolean isDeterministic()
+    {
+        return false;
+    }
+
     public void keyPressed(KeyEvent e) 
     {
         key=e.getKeyCode();
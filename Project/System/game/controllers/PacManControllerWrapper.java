@@ -0,0 +1,21 @@
+package game.controllers;
+
+/*
+ * Base class of the controllers that wrap a Ms Pac-Man controller to measure or guard its decisions (see
+ * game.Latencies, game.Profiler and game.Tournament). The wrapper is only deterministic if the controller it wraps
+ * is, so a wrapped Human is never taken for a controller whose games can be replayed from their seed.
+ */
+public abstract class PacManControllerWrapper implements PacManController
+{
+	protected final PacManController pacMan;
+	
+	protected PacManControllerWrapper(PacManController pacMan)
+	{
+		this.pacMan=pacMan;
+	}
+	
+	public boolean isDeterministic()
+	{
+		return pacMan.isDeterministic();
+	}
+}
@@ -3,7 +3,6 @@ package game.controllers.examples;
 import game.controllers.GhostController;
 import game.core.Game.DM;
 import game.core.Game;
-import game.core.G;
 
 public class Legacy implements GhostController
 {
@@ -16,7 +15,7 @@ public class Legacy implements GhostController
 			if(game.ghostRequiresAction(i))
 				directions[i]=game.getNextGhostDir(i,game.getCurPacManLoc(),true,dms[i]);	//approach Ms Pac-Man using a different distance measure
 																							//for each ghost; last ghost takes random action
-		directions[3]=G.rnd.nextInt(4);
+		directions[3]=game.getRandom().nextInt(4);
 		
 		return directions;
 	}
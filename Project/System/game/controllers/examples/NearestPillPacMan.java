@@ -1,34 +1,38 @@
 package game.controllers.examples;
 
-import java.util.ArrayList;
 import game.controllers.PacManController;
-import game.core.G;
 import game.core.Game;
 
 public class NearestPillPacMan implements PacManController
 {	
+	//Buffers reused every tick so that no arrays are allocated while playing
+	private int[] pills=new int[0];
+	private int[] powerPills=new int[0];
+	private int[] targets=new int[0];
+	
 	public int getAction(Game game,long timeDue)
 	{	
-		int[] pills=game.getPillIndices();
-		int[] powerPills=game.getPowerPillIndices();		
-		int current=game.getCurPacManLoc();
+		if(pills.length<game.getNumberPills() || powerPills.length<game.getNumberPowerPills())
+		{
+			pills=new int[game.getNumberPills()];
+			powerPills=new int[game.getNumberPowerPills()];
+			targets=new int[pills.length+powerPills.length];
+		}
 		
-		ArrayList<Integer> targets=new ArrayList<Integer>();
+		int numPills=game.getPillIndices(pills);
+		int numPowerPills=game.getPowerPillIndices(powerPills);
+		int current=game.getCurPacManLoc();
+		int numTargets=0;
 		
-		for(int i=0;i<pills.length;i++)			//check which pills are available			
+		for(int i=0;i<numPills;i++)				//check which pills are available			
 			if(game.checkPill(i))
-				targets.add(pills[i]);
+				targets[numTargets++]=pills[i];
 		
-		for(int i=0;i<powerPills.length;i++)	//check with power pills are available
+		for(int i=0;i<numPowerPills;i++)		//check with power pills are available
 			if(game.checkPowerPill(i))
-				targets.add(powerPills[i]);
-		
-		int[] targetsArray=new int[targets.size()];		//convert from ArrayList to array
-		
-		for(int i=0;i<targetsArray.length;i++)
-			targetsArray[i]=targets.get(i);
+				targets[numTargets++]=powerPills[i];
 		
 		//return the next direction once the closest target has been identified
-		return game.getNextPacManDir(game.getTarget(current,targetsArray,true,G.DM.PATH),true,Game.DM.PATH);	
+		return game.getNextPacManDir(game.getTarget(current,targets,numTargets,true,Game.DM.PATH),true,Game.DM.PATH);	
 	}
-}
\ No newline at end of file
+}
@@ -129,7 +129,6 @@ public class OriginalGhosts implements GhostController
 		public int getDirectionToMove(int ghostID)
 		{
 			
-			int[] powerPillIndices = currentGameState.getPowerPillIndices();
 			if(ghostID == Blinky)
 			{
 				//Top right
@@ -199,8 +198,6 @@ public class OriginalGhosts implements GhostController
 		public int getDirectionToMove(int ghostID)
 		{
 			
-			int[] powerPillIndices = currentGameState.getPowerPillIndices();
-			
 			switch(ghostID)
 			{
 			case Blinky:
@@ -338,7 +335,6 @@ public class OriginalGhosts implements GhostController
 				//If he less than that distance from pacman he goes towards his scatter
 				//location in the bottom left.
 				int currPacManLoc = currentGameState.getCurPacManLoc();
-				int[] powerPillIndices = currentGameState.getPowerPillIndices();
 				int currScatterTarget = powerPillIndices[2];
 				if(currentGameState.getPathDistance(currentGameState.getCurGhostLoc(ghostID),currPacManLoc) > 40)
 				{
@@ -380,12 +376,22 @@ public class OriginalGhosts implements GhostController
 	
 	private IState[] previousGhostStates = {null,null,null,null};
 	private IState[] currentGhostStates = {lairStates[Blinky],lairStates[Pinky],lairStates[Inky],lairStates[Clyde]};
+	
+	//Buffers reused every tick so that no arrays are allocated while playing
+	private int[] ghostDirections = new int[Game.NUM_GHOSTS];
+	private int[] powerPillIndices = new int[4];
+	
 	//Place your game logic here to play the game as the ghosts
 	public int[] getActions(Game game,long timeDue)
 	{
-		int[] ghostDirections = {-1,-1,-1,-1};
-		
 		currentGameState = game;
+		
+		if(powerPillIndices.length < game.getNumberPowerPills())
+		{
+			powerPillIndices = new int[game.getNumberPowerPills()];
+		}
+		game.getPowerPillIndices(powerPillIndices);
+		
 		if(previousGameState == null)
 		{
 			previousGameState = currentGameState;
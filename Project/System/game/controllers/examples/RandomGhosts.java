@@ -1,7 +1,6 @@
 package game.controllers.examples;
 
 import game.controllers.GhostController;
-import game.core.G;
 import game.core.Game;
 
 public final class RandomGhosts implements GhostController
@@ -16,7 +15,7 @@ public final class RandomGhosts implements GhostController
 			if(game.ghostRequiresAction(i))
 			{			
 				int[] possibleDirs=game.getPossibleGhostDirs(i);			
-				directions[i]=possibleDirs[G.rnd.nextInt(possibleDirs.length)];
+				directions[i]=possibleDirs[game.getRandom().nextInt(possibleDirs.length)];
 			}
 		
 		return directions;
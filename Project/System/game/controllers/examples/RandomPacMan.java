@@ -1,7 +1,6 @@
 package game.controllers.examples;
 
 import game.controllers.PacManController;
-import game.core.G;
 import game.core.Game;
 
 public final class RandomPacMan implements PacManController
@@ -9,6 +8,6 @@ public final class RandomPacMan implements PacManController
 	public int getAction(Game game,long timeDue)
 	{
 		int[] directions=game.getPossiblePacManDirs(true);		//set flag as true to include reversals		
-		return directions[G.rnd.nextInt(directions.length)];
+		return directions[game.getRandom().nextInt(directions.length)];
 	}
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package game.core;
+
+import game.controllers.GhostController;
+import game.controllers.PacManController;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Records a game played by deterministic controllers (see PacManController) from its start: as new instances of
+ * the same controllers play the same game again given its seed (see _G_.play(-)), the file only holds the seed, the
+ * classes of the controllers and, to check that the game is indeed played again, a hash of its state (see
+ * G.getStateHash()) at the start of every level and at the end:
+ *
+ * header:      MAGIC, VERSION, seed (long), class names of Ms Pac-Man's and the ghosts' controllers (UTF)
+ * checkpoints: the time (int) and the state hash (long) of the game at the start of every level after the first
+ * footer:      the time and state hash at the end, and MAGIC again
+ *
+ * The controllers must be as their classes' public no-argument constructors create them, which is up to the caller:
+ * one set up by its supplier (e.g., () -> new MyPacMan(depth)) would be replayed by a default instance, which
+ * plays another game, and the replay would fail its checks (see ReplayRecorder.open(-)).
+ *
+ * A game takes a few dozen bytes however long it is, against 2 bytes per step for ReplayRecorder; in exchange,
+ * loading the replay plays the game again (see Replay), which takes as long as the controllers need.
+ */
+public class CompactReplayRecorder implements GameRecorder
+{
+	public static final int MAGIC=0x4D505243;		//"MPRC"
+	public static final short VERSION=1;
+	public static final int CHECKPOINT_SIZE=12;		//bytes
+	
+	private final G game;
+	private final DataOutputStream out;
+	private int level;
+	private boolean closed;
+	
+	//Creates the replay file supplied, overwriting any existing one, to record the game supplied, which must just have been started with the seed supplied
+	public CompactReplayRecorder(String fileName,G game,long seed,PacManController pacManController,GhostController ghostController) throws IOException
+	{
+		if(!ReplayRecorder.isReproducible(game,pacManController,ghostController))
+			throw new IllegalArgumentException("the game cannot be played again from its seed");
+		
+		this.game=game;
+		this.level=game.getCurLevel();
+		
+		out=new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Path.of(fileName))));
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(seed);
+		out.writeUTF(pacManController.getClass().getName());
+		out.writeUTF(ghostController.getClass().getName());
+		out.flush();
+	}
+	
+	//Records a checkpoint at the start of every level; the actions themselves are not recorded
+	public void record(int[] actionsTaken) throws IOException
+	{
+		if(game.getCurLevel()!=level)
+		{
+			level=game.getCurLevel();
+			writeCheckpoint();
+			out.flush();
+		}
+	}
+	
+	//Writes the checkpoint of the game's current state, which should be its end
+	public void close() throws IOException
+	{
+		if(closed)
+			return;
+		
+		closed=true;
+		
+		try
+		{
+			writeCheckpoint();
+			out.writeInt(MAGIC);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+	
+	private void writeCheckpoint() throws IOException
+	{
+		out.writeInt(game.getTotalTime());
+		out.writeLong(game.getStateHash());
+	}
+}
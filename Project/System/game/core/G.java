@@ -14,13 +14,21 @@
 package game.core;
 
 import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Random;
 
 /*
  * Simple implementation of Ms Pac-Man. The class Game contains all code relating to the
@@ -29,17 +37,20 @@ import java.util.Random;
  */
 public class G implements Game
 {	
-	// Random number generator
-	public static Random rnd = new Random(0);
-
 	//File names for data
 	public static String[] nodeNames={"a","b","c","d"};
-	public static String[] distNames={"da","db","dc","dd"};
+	public static String[] binNames={"a.bin","b.bin","c.bin","d.bin"};	//binary versions of the above (see MazeConverter)
 	public static String pathMazes="data";
 	
+	//Marks ghost path distances that could not be pre-computed (they are walked on demand instead)
+	private static final int UNKNOWN_DISTANCE=255;
+	
 	//Static stuff (mazes are immutable - hence static)
 	protected static Maze[] mazes=new Maze[NUM_MAZES];			
 	
+	//The current maze (always mazes[curMaze]); saves an array look-up in every query
+	protected Maze maze;
+	
 	//Variables (game state):
 	protected BitSet pills,powerPills;
 	//level-specific
@@ -50,6 +61,20 @@ public class G implements Game
 	protected boolean extraLife;
 	//ghosts-specific
 	protected int[] curGhostLocs,lastGhostDirs,edibleTimes,lairTimes;
+	//random number generator (for random substitutes of illegal directions and the controllers' random decisions)
+	protected GameRandom random;
+	//seed of the game (or key of the copy), from which the generators of its copies are derived (see copyInto(-))
+	protected long seed;
+	//copies handed out at the current time (copyTime), so every copy gets its own generator
+	protected int copyTime=-1,copies;
+	//keeps the reversals (see isReversalDue()) apart from the keys of the copies, which are derived from the same seed
+	private static final long REVERSALS=0x7265766572736573L;	//"reverses"
+	
+	//Undo log (see setUndoable(-)): one frame per step, null unless undoable
+	private static final int FRAME_SIZE=15+4*NUM_GHOSTS;						//state saved at the start of every step (with the random generator)
+	private static final int PILL_EATEN=-1,POWER_PILL_EATEN=-2,LEVEL_RESET=-3;	//changes logged during a step
+	protected int[] undoStack;
+	protected int undoSize;
 	
 	/////////////////////////////////////////////////////////////////////////////
 	/////////////////  Constructors and Initialisers   //////////////////////////
@@ -61,18 +86,36 @@ public class G implements Game
 	//loads the mazes and store them
 	protected void init()
 	{		
-		for(int i=0;i<mazes.length;i++)
-			if(mazes[i]==null)
-				mazes[i]=new Maze(i);		
+		synchronized(mazes)		//games may be started on several threads at once
+		{
+			for(int i=0;i<mazes.length;i++)
+				if(mazes[i]==null)
+					mazes[i]=new Maze(i);
+		}
 	}
 	
 	//Creates an exact copy of the game
 	public Game copy()
 	{
 		G copy=new G();
-		copy.pills=(BitSet)pills.clone();
-		copy.powerPills=(BitSet)powerPills.clone();		
+		copyInto(copy);
+		
+		return copy;
+	}
+	
+	/*
+	 * Copies the state of the game into the one supplied, which must have been obtained from copy(); its bit sets and
+	 * arrays are re-used, so no memory is allocated (see GamePool). The copy gets a generator of its own, keyed by the
+	 * seed of the game, its time and the number of copies handed out at that time (see GameRandom.hash(-,-)), so taking
+	 * copies never changes the random events of the game itself: these only depend on its seed and the moves played.
+	 */
+	public void copyInto(Game target)
+	{
+		G copy=(G)target;
+		copy.pills=copyOf(pills,copy.pills);
+		copy.powerPills=copyOf(powerPills,copy.powerPills);
 		copy.curMaze=curMaze;
+		copy.maze=maze;
 		copy.totLevel=totLevel;
 		copy.levelTime=levelTime;
 		copy.totalTime=totalTime;
@@ -83,12 +126,48 @@ public class G implements Game
 		copy.lastPacManDir=lastPacManDir;
 		copy.livesRemaining=livesRemaining;
 		copy.extraLife=extraLife;
-		copy.curGhostLocs=Arrays.copyOf(curGhostLocs,curGhostLocs.length);
-		copy.lastGhostDirs=Arrays.copyOf(lastGhostDirs,lastGhostDirs.length);
-		copy.edibleTimes=Arrays.copyOf(edibleTimes,edibleTimes.length);
-		copy.lairTimes=Arrays.copyOf(lairTimes,lairTimes.length);
+		copy.curGhostLocs=copyOf(curGhostLocs,copy.curGhostLocs);
+		copy.lastGhostDirs=copyOf(lastGhostDirs,copy.lastGhostDirs);
+		copy.edibleTimes=copyOf(edibleTimes,copy.edibleTimes);
+		copy.lairTimes=copyOf(lairTimes,copy.lairTimes);
+		copy.undoSize=0;
+		copy.copyTime=-1;
 		
-		return copy;
+		if(copyTime!=totalTime)
+		{
+			copyTime=totalTime;
+			copies=0;
+		}
+		
+		copy.seed=GameRandom.hash(GameRandom.hash(seed,totalTime),copies++);
+		
+		if(copy.random==null)
+			copy.random=new GameRandom(copy.seed);
+		else
+			copy.random.setSeed(copy.seed);
+	}
+	
+	//Copies the bits into the target, which is only allocated if missing
+	private static BitSet copyOf(BitSet source,BitSet target)
+	{
+		if(target==null)
+			return (BitSet)source.clone();
+		
+		target.clear();
+		target.or(source);
+		
+		return target;
+	}
+	
+	//Copies the array into the target, which is only allocated if missing or of the wrong length
+	private static int[] copyOf(int[] source,int[] target)
+	{
+		if(target==null || target.length!=source.length)
+			return Arrays.copyOf(source,source.length);
+		
+		System.arraycopy(source,0,target,0,source.length);
+		
+		return target;
 	}
 	
 	//If pac-man has been eaten or a new level has been reached
@@ -97,8 +176,13 @@ public class G implements Game
 		if(newLevel)
 		{
 			curMaze=(curMaze+1)%G.NUM_MAZES;
+			maze=mazes[curMaze];
 			totLevel++;
 			levelTime=0;
+			
+			if(undoStack!=null)
+				logLevelReset();
+			
 			pills.set(0,getNumberPills());
 			powerPills.set(0,getNumberPowerPills());						
 		}
@@ -106,8 +190,8 @@ public class G implements Game
 		curPacManLoc=getInitialPacPosition();
 		lastPacManDir=G.INITIAL_PAC_DIR;
 		
-		Arrays.fill(curGhostLocs,mazes[curMaze].lairPosition);	
-		lastGhostDirs=Arrays.copyOf(G.INITIAL_GHOST_DIRS,G.INITIAL_GHOST_DIRS.length);
+		Arrays.fill(curGhostLocs,maze.lairPosition);	
+		System.arraycopy(G.INITIAL_GHOST_DIRS,0,lastGhostDirs,0,G.INITIAL_GHOST_DIRS.length);
 	
 		Arrays.fill(edibleTimes,0);		
 		ghostEatMultiplier=1;
@@ -123,6 +207,8 @@ public class G implements Game
 	//Central method that advances the game state
 	public int[] advanceGame(int pacManDir,int[] ghostDirs)
 	{			
+		int frame=undoStack!=null ? saveFrame() : -1;
+		
 		updatePacMan(pacManDir);			//move pac-man		
 		eatPill();							//eat a pill
 		boolean reverse=eatPowerPill();		//eat a power pill
@@ -140,7 +226,7 @@ public class G implements Game
 				lairTimes[i]--;
 			
 				if(lairTimes[i]==0)
-					curGhostLocs[i]=mazes[curMaze].initialGhostsPosition;
+					curGhostLocs[i]=maze.initialGhostsPosition;
 			}
 				
 		if(!extraLife && score>=EXTRA_LIFE_SCORE)	//award 1 extra life at 10000 points
@@ -153,6 +239,9 @@ public class G implements Game
 		levelTime++;
 		checkLevelState();	//check if level/game is over
 		
+		if(frame>=0)
+			push(frame);
+		
 		return actionsTakens;
 	}
 	
@@ -167,21 +256,22 @@ public class G implements Game
 	//Checks the direction supplied by the controller and substitutes for a legal one if necessary
 	protected int checkPacManDir(int direction)
 	{
-		int[] neighbours=getPacManNeighbours();
+		int[] neighbours=maze.neighbours;
+		int node=curPacManLoc<<2;
 				
-		if((direction>3 || direction<0 || neighbours[direction]==-1) && (lastPacManDir>3 || lastPacManDir<0 || neighbours[lastPacManDir]==-1))
+		if((direction>3 || direction<0 || neighbours[node+direction]==-1) && (lastPacManDir>3 || lastPacManDir<0 || neighbours[node+lastPacManDir]==-1))
 			return 4;
 		
 		if(direction<0 || direction>3)
 			direction=lastPacManDir;
 		
-		if(neighbours[direction]==-1)
-			if(neighbours[lastPacManDir]!=-1) 
+		if(neighbours[node+direction]==-1)
+			if(neighbours[node+lastPacManDir]!=-1) 
 				direction=lastPacManDir;
 			else
 			{
-				int[] options=getPossiblePacManDirs(true);
-				direction=options[G.rnd.nextInt(options.length)];
+				int[] options=getPossibleDirs(curPacManLoc,lastPacManDir,true);
+				direction=options[random.nextInt(options.length)];
 			}
 
 		return direction;		
@@ -215,16 +305,18 @@ public class G implements Game
 		if(direction<0 || direction>3)
 			direction=lastGhostDirs[whichGhost];
 			
-		int[] neighbours=getGhostNeighbours(whichGhost);
+		int[] neighbours=maze.neighbours;
+		int node=curGhostLocs[whichGhost]<<2;
+		int reverse=getReverse(lastGhostDirs[whichGhost]);
 			
-		if(neighbours[direction]==-1)
+		if(direction==reverse || neighbours[node+direction]==-1)
 		{
-			if(neighbours[lastGhostDirs[whichGhost]]!=-1)
+			if(neighbours[node+lastGhostDirs[whichGhost]]!=-1)
 				direction=lastGhostDirs[whichGhost];
 			else
 			{
-				int[] options=getPossibleGhostDirs(whichGhost);
-				direction=options[G.rnd.nextInt(options.length)];
+				int[] options=getPossibleDirs(curGhostLocs[whichGhost],lastGhostDirs[whichGhost],false);
+				direction=options[random.nextInt(options.length)];
 			}
 		}
 
@@ -240,6 +332,9 @@ public class G implements Game
 		{
 			score+=G.PILL;
 			pills.clear(pillIndex);
+			
+			if(undoStack!=null)
+				push(pillIndex,PILL_EATEN);
 		}
 	}
 	
@@ -255,6 +350,9 @@ public class G implements Game
 			ghostEatMultiplier=1;
 			powerPills.clear(powerPillIndex);
 			
+			if(undoStack!=null)
+				push(powerPillIndex,POWER_PILL_EATEN);
+			
 			//This ensures that only ghosts outside the lair (i.e., inside the maze) turn edible
 			int newEdibleTime=(int)(G.EDIBLE_TIME*(Math.pow(G.EDIBLE_TIME_REDUCTION,totLevel)));
 			
@@ -269,12 +367,23 @@ public class G implements Game
 			
 			reverse=true;
 		}
-		else if(levelTime>1 && G.rnd.nextDouble()<G.GHOST_REVERSAL)	//random ghost reversal
+		else if(levelTime>1 && isReversalDue())	//random ghost reversal
 			reverse=true;
 		
 		return reverse;
 	}
 	
+	/*
+	 * Whether the ghosts reverse at random in the current step. The draw is a function of the seed and the time only
+	 * (see GameRandom.hash(-,-)), not of the game's generator, so games started with the same seed meet the same
+	 * reversals, step by step, whatever the controllers do (power pills eaten, illegal moves, copies taken); a copy
+	 * has a seed of its own, so a controller cannot foresee the reversals of the game.
+	 */
+	protected boolean isReversalDue()
+	{
+		return GameRandom.toDouble(GameRandom.hash(seed^REVERSALS,totalTime))<G.GHOST_REVERSAL;
+	}
+	
 	//This is where the characters of the game eat one another if possible
 	protected void feast()
 	{		
@@ -290,7 +399,7 @@ public class G implements Game
 					ghostEatMultiplier*=2;
 					edibleTimes[i]=0;					
 					lairTimes[i]=(int)(G.COMMON_LAIR_TIME*(Math.pow(G.LAIR_REDUCTION,totLevel)));					
-					curGhostLocs[i]=mazes[curMaze].lairPosition;
+					curGhostLocs[i]=maze.lairPosition;
 					lastGhostDirs[i]=G.INITIAL_GHOST_DIRS[i];
 				}
 				else													//ghost eats pac-man
@@ -333,6 +442,278 @@ public class G implements Game
 		}		
 	}
 	
+	/////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Serialisation  ///////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+	
+	//Writes the state of the game (everything copyInto(-) copies, including the seed and random number generator) so that
+	//readState(-) can restore it, e.g., as a keyframe of a replay (see ReplayRecorder)
+	protected void writeState(DataOutput out) throws IOException
+	{
+		writeBits(pills,out);
+		writeBits(powerPills,out);
+		out.writeByte(curMaze);
+		out.writeShort(totLevel);
+		out.writeInt(levelTime);
+		out.writeInt(totalTime);
+		out.writeInt(score);
+		out.writeShort(ghostEatMultiplier);
+		out.writeBoolean(gameOver);
+		out.writeShort(curPacManLoc);
+		out.writeByte(lastPacManDir);
+		out.writeByte(livesRemaining);
+		out.writeBoolean(extraLife);
+		
+		for(int i=0;i<NUM_GHOSTS;i++)
+		{
+			out.writeShort(curGhostLocs[i]);
+			out.writeByte(lastGhostDirs[i]);
+			out.writeShort(edibleTimes[i]);
+			out.writeShort(lairTimes[i]);
+		}
+		
+		random.writeState(out);
+		out.writeLong(seed);
+	}
+	
+	//Restores the state written by writeState(-); the game does not need to have been started
+	protected void readState(DataInput in) throws IOException
+	{
+		init();
+		
+		pills=readBits(in);
+		powerPills=readBits(in);
+		curMaze=in.readByte();
+		maze=mazes[curMaze];
+		totLevel=in.readShort();
+		levelTime=in.readInt();
+		totalTime=in.readInt();
+		score=in.readInt();
+		ghostEatMultiplier=in.readShort();
+		gameOver=in.readBoolean();
+		curPacManLoc=in.readShort();
+		lastPacManDir=in.readByte();
+		livesRemaining=in.readByte();
+		extraLife=in.readBoolean();
+		
+		curGhostLocs=new int[NUM_GHOSTS];
+		lastGhostDirs=new int[NUM_GHOSTS];
+		edibleTimes=new int[NUM_GHOSTS];
+		lairTimes=new int[NUM_GHOSTS];
+		
+		for(int i=0;i<NUM_GHOSTS;i++)
+		{
+			curGhostLocs[i]=in.readShort();
+			lastGhostDirs[i]=in.readByte();
+			edibleTimes[i]=in.readShort();
+			lairTimes[i]=in.readShort();
+		}
+		
+		if(random==null)
+			random=new GameRandom(0);
+		
+		random.readState(in);
+		seed=in.readLong();
+		copyTime=-1;
+		undoSize=0;
+	}
+	
+	//Whether the game supplied is in the same state as this one (except for their random number generators)
+	protected boolean hasSameState(G other)
+	{
+		return pills.equals(other.pills) && powerPills.equals(other.powerPills) && curMaze==other.curMaze && totLevel==other.totLevel 
+				&& levelTime==other.levelTime && totalTime==other.totalTime && score==other.score && ghostEatMultiplier==other.ghostEatMultiplier 
+				&& gameOver==other.gameOver && curPacManLoc==other.curPacManLoc && lastPacManDir==other.lastPacManDir 
+				&& livesRemaining==other.livesRemaining && extraLife==other.extraLife && Arrays.equals(curGhostLocs,other.curGhostLocs) 
+				&& Arrays.equals(lastGhostDirs,other.lastGhostDirs) && Arrays.equals(edibleTimes,other.edibleTimes) && Arrays.equals(lairTimes,other.lairTimes);
+	}
+	
+	//Hash of the state compared by hasSameState(-): games in the same state have the same hash (e.g., to check that a
+	//replay reproduces a game without storing its state, see ReplayRecorder)
+	protected long getStateHash()
+	{
+		long hash=pills.hashCode();
+		
+		for(long value : new long[]{powerPills.hashCode(),curMaze,totLevel,levelTime,totalTime,score,ghostEatMultiplier,gameOver ? 1 : 0,
+				curPacManLoc,lastPacManDir,livesRemaining,extraLife ? 1 : 0,Arrays.hashCode(curGhostLocs),Arrays.hashCode(lastGhostDirs),
+				Arrays.hashCode(edibleTimes),Arrays.hashCode(lairTimes)})
+			hash=(hash^value)*0x100000001B3L;
+		
+		return hash;
+	}
+	
+	private static void writeBits(BitSet bits,DataOutput out) throws IOException
+	{
+		long[] words=bits.toLongArray();
+		out.writeByte(words.length);
+		
+		for(long word : words)
+			out.writeLong(word);
+	}
+	
+	private static BitSet readBits(DataInput in) throws IOException
+	{
+		long[] words=new long[in.readByte()];
+		
+		for(int i=0;i<words.length;i++)
+			words[i]=in.readLong();
+		
+		return BitSet.valueOf(words);
+	}
+	
+	/////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////////  Undo  ////////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+	
+	//Turns the undo log on or off. When on, every call to advanceGame(-,-) logs the changes it makes so that undo() 
+	//can revert them exactly, which allows a depth-first search to run on a single game without copying it. The
+	//random number generator is rewound as well, so advancing again after an undo meets the same random events
+	//(ghost reversals and random substitutes for illegal directions) as the first time
+	public void setUndoable(boolean undoable)
+	{
+		undoStack=undoable ? new int[64*FRAME_SIZE] : null;
+		undoSize=0;
+	}
+	
+	//Reverts the last call to advanceGame(-,-) made since the log was turned on; returns false if there is none
+	public boolean undo()
+	{
+		if(undoSize==0)
+			return false;
+		
+		int frame=undoStack[--undoSize];
+		
+		//changes are reverted in the reverse order in which they were made
+		while(undoSize>frame+FRAME_SIZE)
+		{
+			switch(undoStack[--undoSize])
+			{
+				case PILL_EATEN: pills.set(undoStack[--undoSize]); break;
+				case POWER_PILL_EATEN: powerPills.set(undoStack[--undoSize]); break;
+				case LEVEL_RESET: 
+					powerPills.clear();
+					
+					for(int i=undoStack[--undoSize];i>0;i--)
+						powerPills.set(undoStack[--undoSize]);
+					
+					pills.clear();
+					
+					for(int i=undoStack[--undoSize];i>0;i--)
+						pills.set(undoStack[--undoSize]);
+					
+					break;
+			}
+		}
+		
+		int index=frame;
+		curMaze=undoStack[index++];
+		maze=mazes[curMaze];
+		totLevel=undoStack[index++];
+		levelTime=undoStack[index++];
+		totalTime=undoStack[index++];
+		score=undoStack[index++];
+		ghostEatMultiplier=undoStack[index++];
+		gameOver=undoStack[index++]!=0;
+		curPacManLoc=undoStack[index++];
+		lastPacManDir=undoStack[index++];
+		livesRemaining=undoStack[index++];
+		extraLife=undoStack[index++]!=0;
+		
+		for(int i=0;i<NUM_GHOSTS;i++)
+		{
+			curGhostLocs[i]=undoStack[index++];
+			lastGhostDirs[i]=undoStack[index++];
+			edibleTimes[i]=undoStack[index++];
+			lairTimes[i]=undoStack[index++];
+		}
+		
+		random.setState(toLong(undoStack[index],undoStack[index+1]),toLong(undoStack[index+2],undoStack[index+3]));
+		
+		undoSize=frame;
+		
+		return true;
+	}
+	
+	//Saves the state at the start of a step (everything but the pills, whose changes are logged as they happen); 
+	//returns the start of the frame
+	private int saveFrame()
+	{
+		int frame=undoSize;
+		ensureUndoCapacity(FRAME_SIZE);
+		
+		undoStack[undoSize++]=curMaze;
+		undoStack[undoSize++]=totLevel;
+		undoStack[undoSize++]=levelTime;
+		undoStack[undoSize++]=totalTime;
+		undoStack[undoSize++]=score;
+		undoStack[undoSize++]=ghostEatMultiplier;
+		undoStack[undoSize++]=gameOver ? 1 : 0;
+		undoStack[undoSize++]=curPacManLoc;
+		undoStack[undoSize++]=lastPacManDir;
+		undoStack[undoSize++]=livesRemaining;
+		undoStack[undoSize++]=extraLife ? 1 : 0;
+		
+		for(int i=0;i<NUM_GHOSTS;i++)
+		{
+			undoStack[undoSize++]=curGhostLocs[i];
+			undoStack[undoSize++]=lastGhostDirs[i];
+			undoStack[undoSize++]=edibleTimes[i];
+			undoStack[undoSize++]=lairTimes[i];
+		}
+		
+		long seed=random.getSeed(),gamma=random.getGamma();
+		undoStack[undoSize++]=(int)(seed>>>32);
+		undoStack[undoSize++]=(int)seed;
+		undoStack[undoSize++]=(int)(gamma>>>32);
+		undoStack[undoSize++]=(int)gamma;
+		
+		return frame;
+	}
+	
+	private static long toLong(int high,int low)
+	{
+		return ((long)high<<32)|(low&0xFFFFFFFFL);
+	}
+	
+	//Logs the pills and power pills left before they are all put back for the next level
+	private void logLevelReset()
+	{
+		ensureUndoCapacity(pills.cardinality()+powerPills.cardinality()+3);
+		
+		int count=0;
+		
+		for(int i=pills.nextSetBit(0);i>=0;i=pills.nextSetBit(i+1),count++)
+			undoStack[undoSize++]=i;
+		
+		undoStack[undoSize++]=count;
+		count=0;
+		
+		for(int i=powerPills.nextSetBit(0);i>=0;i=powerPills.nextSetBit(i+1),count++)
+			undoStack[undoSize++]=i;
+		
+		undoStack[undoSize++]=count;
+		undoStack[undoSize++]=LEVEL_RESET;
+	}
+	
+	private void push(int value)
+	{
+		ensureUndoCapacity(1);
+		undoStack[undoSize++]=value;
+	}
+	
+	private void push(int value,int tag)
+	{
+		ensureUndoCapacity(2);
+		undoStack[undoSize++]=value;
+		undoStack[undoSize++]=tag;
+	}
+	
+	private void ensureUndoCapacity(int required)
+	{
+		if(undoSize+required>undoStack.length)
+			undoStack=Arrays.copyOf(undoStack,Math.max(2*undoStack.length,undoSize+required));
+	}
+	
 	/////////////////////////////////////////////////////////////////////////////
 	///////////////////////////  Getter Methods  ////////////////////////////////
 	/////////////////////////////////////////////////////////////////////////////
@@ -351,6 +732,12 @@ public class G implements Game
 		return 4;
 	}
 	
+	//The random number generator of the game; controllers should use the one of the game they are given so games can be reproduced
+	public GameRandom getRandom()
+	{
+		return random;
+	}
+	
 	//Whether the game is over or not
 	public boolean gameOver()
 	{
@@ -372,19 +759,36 @@ public class G implements Game
 	//Returns the neighbours of the node at which Ms Pac-Man currently resides
 	public int[] getPacManNeighbours()
 	{
-		return Arrays.copyOf(mazes[curMaze].graph[curPacManLoc].neighbours,mazes[curMaze].graph[curPacManLoc].neighbours.length);
+		return Arrays.copyOfRange(maze.neighbours,curPacManLoc<<2,(curPacManLoc<<2)+4);
 	}
 	
 	//Returns the neighbours of the node at which the specified ghost currently resides. NOTE: since ghosts are not allowed to reverse, that
 	//neighbour is filtered out. Alternatively use: getNeighbour(), given curGhostLoc[-] for all directions
 	public int[] getGhostNeighbours(int whichGhost)
 	{
-		int[] neighbours=Arrays.copyOf(mazes[curMaze].graph[curGhostLocs[whichGhost]].neighbours,mazes[curMaze].graph[curGhostLocs[whichGhost]].neighbours.length);		
+		int[] neighbours=Arrays.copyOfRange(maze.neighbours,curGhostLocs[whichGhost]<<2,(curGhostLocs[whichGhost]<<2)+4);		
 		neighbours[getReverse(lastGhostDirs[whichGhost])]=-1;
 		
 		return neighbours;
 	}
 	
+	//Same as getPacManNeighbours() but fills the array supplied (of length 4 or more) instead of allocating a new one
+	public int getPacManNeighbours(int[] neighbours)
+	{
+		System.arraycopy(maze.neighbours,curPacManLoc<<2,neighbours,0,4);
+		
+		return 4;
+	}
+	
+	//Same as getGhostNeighbours(-) but fills the array supplied (of length 4 or more) instead of allocating a new one
+	public int getGhostNeighbours(int whichGhost,int[] neighbours)
+	{
+		System.arraycopy(maze.neighbours,curGhostLocs[whichGhost]<<2,neighbours,0,4);
+		neighbours[getReverse(lastGhostDirs[whichGhost])]=-1;
+		
+		return 4;
+	}
+	
 	//The current level
 	public int getCurLevel()
 	{
@@ -460,13 +864,13 @@ public class G implements Game
 	//Total number of pills in the maze
 	public int getNumberPills()
 	{
-		return mazes[curMaze].pillIndices.length;
+		return maze.pillIndices.length;
 	}
 	
 	//Total number of power pills in the maze
 	public int getNumberPowerPills()
 	{
-		return mazes[curMaze].powerPillIndices.length;
+		return maze.powerPillIndices.length;
 	}
 	
 	//Time left that the specified ghost will spend in the lair
@@ -484,51 +888,51 @@ public class G implements Game
 	//Returns name of maze: A, B, C, D
 	public String getName()
 	{
-		return mazes[curMaze].name;
+		return maze.name;
 	}
 				
 	//Returns the starting position of Ms PacMan
 	public int getInitialPacPosition()
 	{
-		return mazes[curMaze].initialPacPosition;
+		return maze.initialPacPosition;
 	}
 	
 	//Returns the starting position of the ghosts (i.e., first node AFTER leaving the lair)
 	public int getInitialGhostsPosition()
 	{
-		return mazes[curMaze].initialGhostsPosition;
+		return maze.initialGhostsPosition;
 	}
 	
 	//Total number of nodes in the graph (i.e., those with pills, power pills and those that are empty)
 	public int getNumberOfNodes()
 	{
-		return mazes[curMaze].graph.length;
+		return maze.numNodes;
 	}
 		
 	//Returns the x coordinate of the specified node
 	public int getX(int index)
 	{
-		return mazes[curMaze].graph[index].x;
+		return maze.x[index];
 	}
 	
 	//Returns the y coordinate of the specified node
 	public int getY(int index)
 	{
-		return mazes[curMaze].graph[index].y;
+		return maze.y[index];
 	}
 	
 	//Returns the pill index of the node. If it is -1, the node has no pill. Otherwise one can
 	//use the bitset to check whether the pill has already been eaten
 	public int getPillIndex(int nodeIndex)
 	{
-		return mazes[curMaze].graph[nodeIndex].pillIndex;
+		return maze.pillIndex[nodeIndex];
 	}
 	
 	//Returns the power pill index of the node. If it is -1, the node has no pill. Otherwise one 
 	//can use the bitset to check whether the pill has already been eaten
 	public int getPowerPillIndex(int nodeIndex)
 	{
-		return mazes[curMaze].graph[nodeIndex].powerPillIndex;
+		return maze.powerPillIndex[nodeIndex];
 	}
 	
 	//Returns the neighbour of node index that corresponds to direction. In the case of neutral, the 
@@ -538,117 +942,149 @@ public class G implements Game
 		if(direction<0 || direction>3)//this takes care of "neutral"
 			return nodeIndex;
 		else
-			return mazes[curMaze].graph[nodeIndex].neighbours[direction];
+			return maze.neighbours[(nodeIndex<<2)+direction];
 	}
 		
 	//Returns the indices to all the nodes that have pills
 	public int[] getPillIndices()
 	{
-		return Arrays.copyOf(mazes[curMaze].pillIndices,mazes[curMaze].pillIndices.length);
+		return Arrays.copyOf(maze.pillIndices,maze.pillIndices.length);
 	}
 	
 	//Returns the indices to all the nodes that have power pills
 	public int[] getPowerPillIndices()
 	{
-		return Arrays.copyOf(mazes[curMaze].powerPillIndices,mazes[curMaze].powerPillIndices.length);
+		return Arrays.copyOf(maze.powerPillIndices,maze.powerPillIndices.length);
 	}
 	
 	//Returns the indices to all the nodes that are junctions
 	public int[] getJunctionIndices()
 	{
-		return Arrays.copyOf(mazes[curMaze].junctionIndices,mazes[curMaze].junctionIndices.length);
+		return Arrays.copyOf(maze.junctionIndices,maze.junctionIndices.length);
+	}
+	
+	//Same as getPillIndices() but fills the array supplied (of length getNumberPills() or more); returns the number of pills
+	public int getPillIndices(int[] indices)
+	{
+		System.arraycopy(maze.pillIndices,0,indices,0,maze.pillIndices.length);
+		
+		return maze.pillIndices.length;
+	}
+	
+	//Same as getPowerPillIndices() but fills the array supplied (of length getNumberPowerPills() or more); returns the number
+	//of power pills
+	public int getPowerPillIndices(int[] indices)
+	{
+		System.arraycopy(maze.powerPillIndices,0,indices,0,maze.powerPillIndices.length);
+		
+		return maze.powerPillIndices.length;
+	}
+	
+	//Same as getJunctionIndices() but fills the array supplied (large enough to hold all junctions); returns the number of
+	//junctions
+	public int getJunctionIndices(int[] indices)
+	{
+		System.arraycopy(maze.junctionIndices,0,indices,0,maze.junctionIndices.length);
+		
+		return maze.junctionIndices.length;
 	}
 	
 	//Checks of a node is a junction
 	public boolean isJunction(int nodeIndex)
 	{
-		return mazes[curMaze].graph[nodeIndex].numNeighbours>2;
+		return maze.numNeighbours[nodeIndex]>2;
 	}
 	
 	//Returns the number of neighbours of a node: 2, 3 or 4. Exception: lair, which has no neighbours
 	public int getNumNeighbours(int nodeIndex)
 	{
-		return mazes[curMaze].graph[nodeIndex].numNeighbours;
+		return maze.numNeighbours[nodeIndex];
 	}
 	
 	//Returns the actual directions Ms Pac-Man can take
 	public int[] getPossiblePacManDirs(boolean includeReverse)
 	{
-		return getPossibleDirs(curPacManLoc,lastPacManDir,includeReverse);
+		return getPossibleDirs(curPacManLoc,lastPacManDir,includeReverse).clone();
 	}
 	
 	//Returns the actual directions the specified ghost can take
 	public int[] getPossibleGhostDirs(int whichGhost)
 	{
-		return getPossibleDirs(curGhostLocs[whichGhost],lastGhostDirs[whichGhost],false);		
+		return getPossibleDirs(curGhostLocs[whichGhost],lastGhostDirs[whichGhost],false).clone();		
 	}
 	
-	//Computes the directions to be taken given the current location
-	private int[] getPossibleDirs(int curLoc,int curDir,boolean includeReverse)
+	//Same as getPossiblePacManDirs(-) but fills the array supplied (of length 4 or more); returns the number of directions
+	public int getPossiblePacManDirs(boolean includeReverse,int[] directions)
 	{
-		int numNeighbours=mazes[curMaze].graph[curLoc].numNeighbours;
-
-		if(numNeighbours==0)
-			return new int[0];
-		
-		int[] nodes=mazes[curMaze].graph[curLoc].neighbours;
-		int[] directions;
+		int[] options=getPossibleDirs(curPacManLoc,lastPacManDir,includeReverse);
+		System.arraycopy(options,0,directions,0,options.length);
 		
-		if(includeReverse || (curDir<0 || curDir>3))
-			directions=new int[numNeighbours];
-		else
-			directions=new int[numNeighbours-1];
+		return options.length;
+	}
+	
+	//Same as getPossibleGhostDirs(-) but fills the array supplied (of length 4 or more); returns the number of directions
+	public int getPossibleGhostDirs(int whichGhost,int[] directions)
+	{
+		int[] options=getPossibleDirs(curGhostLocs[whichGhost],lastGhostDirs[whichGhost],false);
+		System.arraycopy(options,0,directions,0,options.length);
 		
-		int index=0;
+		return options.length;
+	}
+	
+	//Returns the directions to be taken given the current location, as pre-computed by the maze. The array
+	//is shared and must not be modified
+	private int[] getPossibleDirs(int curLoc,int curDir,boolean includeReverse)
+	{
+		if(includeReverse || curDir<0 || curDir>3)
+			return maze.possibleDirs[curLoc*5+4];
 		
-		for(int i=0;i<nodes.length;i++)
-			if(nodes[i]!=-1)
-			{
-				if(includeReverse || (curDir<0 || curDir>3))
-					directions[index++]=i;
-				else if(i!=getReverse(curDir))
-					directions[index++]=i;
-			}
-
-		return directions;
+		return maze.possibleDirs[curLoc*5+curDir];
 	}
 			
 	//Returns the direction Pac-Man should take to approach/retreat a target (to) given some distance 
 	//measure
 	public int getNextPacManDir(int to,boolean closer,DM measure)
 	{
-		return getNextDir(mazes[curMaze].graph[curPacManLoc].neighbours,to,closer,measure);
+		if(closer && measure==DM.PATH)
+			return getNextPathDir(curPacManLoc,to);
+		
+		return getNextDir(curPacManLoc,4,to,closer,measure);
 	}
 	
 	//Returns the direction the ghost should take to approach/retreat a target (to) given some distance 
 	//measure. Reversals are filtered.
 	public int getNextGhostDir(int whichGhost,int to,boolean closer,Game.DM measure)
 	{	
-		return getNextDir(getGhostNeighbours(whichGhost),to,closer,measure);
+		if(closer && measure==DM.PATH)
+			return getNextGhostPathDir(curGhostLocs[whichGhost],lastGhostDirs[whichGhost],to);
+		
+		return getNextDir(curGhostLocs[whichGhost],getReverse(lastGhostDirs[whichGhost]),to,closer,measure);
 	}
 			
 	
-	//This method returns the direction to take given some options (usually corresponding to the
-	//neighbours of the node in question), moving either towards or away (closer in {true, false})
-	//using one of the three distance measures.
-	private int getNextDir(int[] from,int to,boolean closer,Game.DM measure)
+	//This method returns the direction to take given the neighbours of the node in question, except for
+	//the direction 'excluded' (the reverse for ghosts, or 4 to consider all), moving either towards or 
+	//away (closer in {true, false}) using one of the three distance measures.
+	private int getNextDir(int from,int excluded,int to,boolean closer,Game.DM measure)
 	{
 		int dir=-1;
 
 		double min=Integer.MAX_VALUE;
 		double max=-Integer.MAX_VALUE;
 			
-		for(int i=0;i<from.length;i++)
+		for(int i=0;i<4;i++)
 		{
-			if(from[i]!=-1)
+			int neighbour=maze.neighbours[(from<<2)+i];
+			
+			if(neighbour!=-1 && i!=excluded)
 			{
 				double dist=0;
 					
 				switch(measure)
 				{
-					case PATH: dist=getPathDistance(from[i],to); break;
-					case EUCLID: dist=getEuclideanDistance(from[i],to); break;
-					case MANHATTEN: dist=getManhattenDistance(from[i],to); break;
+					case PATH: dist=getPathDistance(neighbour,to); break;
+					case EUCLID: dist=getEuclideanDistance(neighbour,to); break;
+					case MANHATTEN: dist=getManhattenDistance(neighbour,to); break;
 				}
 					
 				if(closer && dist<min)
@@ -668,89 +1104,103 @@ public class G implements Game
 		return dir;
 	}
 	
+	//Returns the direction that approaches the target (to) along the shortest path, using the table 
+	//pre-computed by the maze. Equivalent to getNextDir(-) with closer=true and DM.PATH
+	private int getNextPathDir(int from,int to)
+	{
+		if(maze.numNeighbours[from]==0 || to<0 || to>=maze.numNodes)
+			return getNextDir(from,4,to,true,G.DM.PATH);
+		
+		int index=from*maze.numNodes+to;
+		
+		return (maze.nextDirs.get(index>>>2)>>>((index&3)<<1))&3;
+	}
+	
+	//Returns the direction a ghost at 'from', last moving in direction 'lastDir', takes to approach the target (to) without
+	//reversing, using the table pre-computed by the maze. Equivalent to getNextDir(-) excluding the reverse of lastDir
+	private int getNextGhostPathDir(int from,int lastDir,int to)
+	{
+		if(maze.numNeighbours[from]<2 || to<0 || to>=maze.numNodes || lastDir<0 || lastDir>3)
+			return getNextDir(from,getReverse(lastDir),to,true,G.DM.PATH);
+		
+		int index=((from<<2)+lastDir)*maze.numNodes+to;
+		
+		return (maze.ghostNextDirs.get(index>>>2)>>>((index&3)<<1))&3;
+	}
+	
 	//Returns the PATH distance from any node to any other node
 	public int getPathDistance(int from,int to)
 	{
 		if(from==to)
 			return 0;		
 		else if(from<to)
-			return mazes[curMaze].distances[((to*(to+1))/2)+from];
+			return maze.distances.get(maze.rowOffsets[to]+from);
 		else
-			return mazes[curMaze].distances[((from*(from+1))/2)+to];
+			return maze.distances.get(maze.rowOffsets[from]+to);
 	}
 	
 	//Returns the EUCLEDIAN distance between two nodes in the current maze.
 	public double getEuclideanDistance(int from,int to)
 	{
-		return Math.sqrt(Math.pow(mazes[curMaze].graph[from].x-mazes[curMaze].graph[to].x,2)+Math.pow(mazes[curMaze].graph[from].y-mazes[curMaze].graph[to].y,2));
+		return Math.sqrt(Math.pow(maze.x[from]-maze.x[to],2)+Math.pow(maze.y[from]-maze.y[to],2));
 	}
 	
 	//Returns the MANHATTEN distance between two nodes in the current maze.
 	public int getManhattenDistance(int from,int to)
 	{
-		return (int)(Math.abs(mazes[curMaze].graph[from].x-mazes[curMaze].graph[to].x)+Math.abs(mazes[curMaze].graph[from].y-mazes[curMaze].graph[to].y));
+		return (int)(Math.abs(maze.x[from]-maze.x[to])+Math.abs(maze.y[from]-maze.y[to]));
 	}
 	
 	//Returns the path of adjacent nodes from one node to another, including these nodes
 	//E.g., path from a to c might be [a,f,r,t,c]
 	public int[] getPath(int from,int to)
 	{
+		//every step along the shortest path reduces the distance by one, so the length is known in advance
+		int[] path=new int[Math.max(getPathDistance(from,to),0)];
 		int currentNode=from;
-		ArrayList<Integer> path=new ArrayList<Integer>();
-		int lastDir;
 
-		while(currentNode!=to)
+		for(int i=0;i<path.length;i++)
 		{
-			path.add(currentNode);
-			int[] neighbours=mazes[curMaze].graph[currentNode].neighbours;
-			lastDir=getNextDir(neighbours,to,true,G.DM.PATH);
-			currentNode=neighbours[lastDir];
+			path[i]=currentNode;
+			currentNode=maze.neighbours[(currentNode<<2)+getNextPathDir(currentNode,to)];
 		}
 
-		int[] arrayPath=new int[path.size()];
-
-		for(int i=0;i<arrayPath.length;i++)
-			arrayPath[i]=path.get(i);
-
-		return arrayPath;
+		return path;
 	}
 	
 	//Similar to getPath(-) but takes into consideration the fact that ghosts may not reverse. Hence the path to be taken
 	//may be significantly longer than the shortest available path
 	public int[] getGhostPath(int whichGhost,int to)
 	{
-		if(mazes[curMaze].graph[curGhostLocs[whichGhost]].numNeighbours==0)
-			return new int[0];
-
+		int[] path=new int[getGhostPathDistance(whichGhost,to)];
 		int currentNode=curGhostLocs[whichGhost];
-		ArrayList<Integer> path=new ArrayList<Integer>();
 		int lastDir=lastGhostDirs[whichGhost];
 
-		while(currentNode!=to)
+		for(int i=0;i<path.length;i++)
 		{
-			path.add(currentNode);
-			int[] neighbours=getGhostNeighbours(currentNode,lastDir);
-			lastDir=getNextDir(neighbours,to,true,G.DM.PATH);
-			currentNode=neighbours[lastDir];
+			path[i]=currentNode;
+			lastDir=getNextGhostPathDir(currentNode,lastDir,to);
+			currentNode=maze.neighbours[(currentNode<<2)+lastDir];
 		}
 
-		int[] arrayPath=new int[path.size()];
-
-		for(int i=0;i<arrayPath.length;i++)
-			arrayPath[i]=path.get(i);
-
-		return arrayPath;
+		return path;
 	}
 	
 	//Returns the node from 'targets' that is closest/farthest from the node 'from' given the distance measure specified
 	public int getTarget(int from,int[] targets,boolean nearest,Game.DM measure)
+	{
+		return getTarget(from,targets,targets.length,nearest,measure);
+	}
+	
+	//Same as above but only considers the first numTargets entries of the array supplied
+	public int getTarget(int from,int[] targets,int numTargets,boolean nearest,Game.DM measure)
 	{
 		int target=-1;
 
 		double min=Integer.MAX_VALUE;
 		double max=-Integer.MAX_VALUE;
 		
-		for(int i=0;i<targets.length;i++)
+		for(int i=0;i<numTargets;i++)
 		{				
 			double dist=0;
 			
@@ -808,42 +1258,88 @@ public class G implements Game
 	//Returns the path distance for a particular ghost: takes into account the fact that ghosts may not reverse
 	public int getGhostPathDistance(int whichGhost,int to)
 	{
-		return getGhostPath(whichGhost,to).length;
-	}
-	
-	//Returns the neighbours of a node with the one correspodining to the reverse of direction being deleted (i.e., =-1)
-	private int[] getGhostNeighbours(int node,int lastDirection)
-	{
-		int[] neighbours=Arrays.copyOf(mazes[curMaze].graph[node].neighbours,mazes[curMaze].graph[node].neighbours.length);		
-		neighbours[getReverse(lastDirection)]=-1;
+		int currentNode=curGhostLocs[whichGhost];
+		int lastDir=lastGhostDirs[whichGhost];
 		
-		return neighbours;
-	}		
+		if(maze.numNeighbours[currentNode]==0)
+			return 0;
+		
+		if(to>=0 && to<maze.numNodes && lastDir>=0 && lastDir<=3)
+		{
+			int distance=maze.ghostDistances.get(((currentNode<<2)+lastDir)*maze.numNodes+to)&0xFF;
+			
+			if(distance!=UNKNOWN_DISTANCE)
+				return distance;
+		}
+		
+		//not covered by the table: walk the path instead
+		int distance=0;
+		
+		while(currentNode!=to)
+		{
+			lastDir=getNextGhostPathDir(currentNode,lastDir,to);
+			currentNode=maze.neighbours[(currentNode<<2)+lastDir];
+			distance++;
+		}
+		
+		return distance;
+	}
 	
 	/*
 	 * Stores the actual mazes, each of which is simply a connected graph. The differences between the mazes are the connectivity
 	 * and the x,y coordinates (used for drawing or to compute the Euclidean distance. There are 3 built-in distance functions in
 	 * total: Euclidean, Manhatten and Dijkstra's shortest path distance. The latter is pre-computed and loaded, the others are
 	 * computed on the fly whenever getNextDir(-) is called.
+	 * 
+	 * Mazes are either parsed from the original text files (and the look-up tables computed) or, if available, mapped
+	 * directly from the binary files written by MazeConverter. In the latter case all tables remain in the mapped file,
+	 * so loading is nearly instantaneous and several JVMs share the same pages.
 	 */
 	protected final class Maze
 	{
-		protected int[] distances,pillIndices,powerPillIndices,junctionIndices;				//Information for the controllers
-		protected Node[] graph;																//The actual maze, stored as a graph (set of nodes)
+		private static final int MAGIC=0x4D504D5A;											//"MPMZ"
+		private static final int VERSION=3;
+		private static final int HASH_SIZE=32;												//SHA-256 of the node file the maze was converted from
+		private static final int HEADER_SIZE=12*4+HASH_SIZE;								//header: 12 ints and the hash, followed by the name
+		private static final int NODE_SIZE=9*4;												//node: index, x, y, 4 neighbours, pill, power pill
+		
+		protected int[] pillIndices,powerPillIndices,junctionIndices;						//Information for the controllers
+		protected ShortBuffer distances;													//Shortest path distances (triangular matrix)
+		protected int[] rowOffsets;															//Start of each row of the distances: (i*(i+1))/2
+		protected ByteBuffer nextDirs;														//Next direction along the shortest path (2 bits per pair of nodes)
+		protected ByteBuffer ghostDistances,ghostNextDirs;									//Distance and next direction for ghosts, which may not reverse
+		protected int[][] possibleDirs;														//Directions that may be taken, per node and last direction
+		protected int numNodes;																//Number of nodes in the graph
+		protected int[] neighbours;															//The actual maze: 4 neighbours per node, see below
+		protected int[] x,y,pillIndex,powerPillIndex,numNeighbours;							//Node information, indexed by node
 		protected int initialPacPosition,lairPosition,initialGhostsPosition,width,height;	//Maze-specific information
 		protected String name;																//Name of the Maze
 					
 		/*
-		 * Each maze is stored as a (connected) graph: all nodes have neighbours, stored in an array of length 4. The
-		 * index of the array associates the direction the neighbour is located at: '[up,right,down,left]'.
-		 * For instance, if node '9' has neighbours '[-1,12,-1,6]', you can reach node '12' by going right, and node
-		 * 6 by going left. The directions returned by the controllers should thus be in {0,1,2,3} and can be used
-		 * directly to determine the next node to go to.
+		 * Each maze is stored as a (connected) graph: all nodes have neighbours, stored in 4 consecutive entries of the
+		 * array 'neighbours' (from index node*4). The offset associates the direction the neighbour is located at:
+		 * '[up,right,down,left]'. For instance, if node '9' has neighbours '[-1,12,-1,6]', you can reach node '12' by 
+		 * going right, and node 6 by going left. The directions returned by the controllers should thus be in {0,1,2,3} 
+		 * and can be used directly to determine the next node to go to. All other information about the nodes is also
+		 * stored in flat arrays (indexed by node) rather than node objects, to keep look-ups cheap.
 		 */		
 		protected Maze(int index)
 		{
-			loadNodes(nodeNames[index]);
-			loadDistances(distNames[index]);
+			this(index,new File(G.pathMazes+System.getProperty("file.separator")+binNames[index]).exists());
+		}
+		
+		//Loads the maze from the binary file if requested (and valid), otherwise from the text files
+		protected Maze(int index,boolean binary)
+		{
+			if(!binary || !loadBinary(binNames[index],nodeNames[index]))
+			{
+				loadNodes(nodeNames[index]);
+				loadDistances(nodeNames[index]);
+				computeNextDirs();
+				computeGhostPaths();
+			}
+			
+			computePossibleDirs();
 		}
 		
 		//Loads all the nodes from files and initialises all maze-specific information.
@@ -860,7 +1356,7 @@ public class G implements Game
 	            this.initialPacPosition=Integer.parseInt(pr[1]);
 	            this.lairPosition=Integer.parseInt(pr[2]);
 	            this.initialGhostsPosition=Integer.parseInt(pr[3]);	            
-	            this.graph=new Node[Integer.parseInt(pr[4])];	            
+	            allocateNodes(Integer.parseInt(pr[4]));	            
 	            this.pillIndices=new int[Integer.parseInt(pr[5])];
 	            this.powerPillIndices=new int[Integer.parseInt(pr[6])];
 	            this.junctionIndices=new int[Integer.parseInt(pr[7])];
@@ -869,28 +1365,22 @@ public class G implements Game
 	            
 	            input=br.readLine();	
 
-	            int nodeIndex=0;
-	        	int pillIndex=0;
-	        	int powerPillIndex=0;	        	
-	        	int junctionIndex=0;
-
 	            while(input!=null)
 	            {	
 	                String[] nd=input.split("\t");    
-	                Node node=new Node(nd[0],nd[1],nd[2],nd[7],nd[8],new String[]{nd[3],nd[4],nd[5],nd[6]});
-	                
-	                graph[nodeIndex++]=node;
-	                
-	                if(node.pillIndex>=0)
-	                	pillIndices[pillIndex++]=node.nodeIndex;
-	                else if(node.powerPillIndex>=0)
-	                	powerPillIndices[powerPillIndex++]=node.nodeIndex;
+	                int node=Integer.parseInt(nd[0]);
+	                x[node]=Integer.parseInt(nd[1]);
+	                y[node]=Integer.parseInt(nd[2]);
 	                
-	                if(node.numNeighbours>2)
-	                	junctionIndices[junctionIndex++]=node.nodeIndex;
+	                for(int i=0;i<4;i++)
+	                	neighbours[(node<<2)+i]=Integer.parseInt(nd[3+i]);
 	                
+	                pillIndex[node]=Integer.parseInt(nd[7]);
+	                powerPillIndex[node]=Integer.parseInt(nd[8]);
 	                input=br.readLine();
 	            }
+	            
+	            indexNodes();
 	        }
 	        catch(IOException ioe)
 	        {
@@ -898,61 +1388,362 @@ public class G implements Game
 	        }
 		}
 		
+		//Creates the (empty) arrays that store the nodes
+		private void allocateNodes(int numNodes)
+		{
+			this.numNodes=numNodes;
+			this.neighbours=new int[numNodes*4];
+			this.x=new int[numNodes];
+			this.y=new int[numNodes];
+			this.pillIndex=new int[numNodes];
+			this.powerPillIndex=new int[numNodes];
+			this.numNeighbours=new int[numNodes];
+		}
+		
+		//Counts the neighbours of all nodes and collects the indices of all nodes with pills, power pills and all 
+		//junctions (arrays must have the right size)
+		private void indexNodes()
+		{
+        	int pillCount=0;
+        	int powerPillCount=0;	        	
+        	int junctionCount=0;
+        	
+        	for(int node=0;node<numNodes;node++)
+        	{
+        		for(int i=0;i<4;i++)
+        			if(neighbours[(node<<2)+i]!=-1)
+        				numNeighbours[node]++;
+        		
+                if(pillIndex[node]>=0)
+                	pillIndices[pillCount++]=node;
+                else if(powerPillIndex[node]>=0)
+                	powerPillIndices[powerPillCount++]=node;
+                
+                if(numNeighbours[node]>2)
+                	junctionIndices[junctionCount++]=node;
+        	}
+		}
+		
 		/*
-		 * Loads the shortest path distances which have been pre-computed. The data contains the shortest distance from
-		 * any node in the maze to any other node. Since the graph is symmetric, the symmetries have been removed to preserve
-		 * memory and all distances are stored in a 1D array; they are looked-up using getDistance(-). 
+		 * Loads the shortest path distances from any node in the maze to any other node. These are derived from the graph
+		 * itself (see PathDistances) and cached on disk. Since the graph is symmetric, the symmetries have been removed to
+		 * preserve memory and all distances are stored in a 1D array; they are looked-up using getDistance(-). All distances
+		 * are well below Short.MAX_VALUE, so they are stored as shorts to halve the memory (and cache) footprint.
 		 */		
 		private void loadDistances(String fileName)
 		{
-			this.distances=new int[((graph.length*(graph.length-1))/2)+graph.length];
+			this.distances=PathDistances.load(new File(G.pathMazes+System.getProperty("file.separator")+fileName),neighbours);
+			computeRowOffsets();
+		}
+		
+		/*
+		 * Pre-computes, for every pair of nodes (from,to), the direction to take at 'from' to approach 'to' along the
+		 * shortest path. Ties are broken exactly as in getNextDir(-) (lowest direction first). Each direction fits into
+		 * 2 bits, so 4 pairs are packed into a single byte and looked-up using getNextPathDir(-). Nodes without any
+		 * neighbours (i.e., the lair) have no entry and are resolved by the caller.
+		 */
+		private void computeNextDirs()
+		{
+			byte[] nextDirs=new byte[(numNodes*numNodes+3)/4];
+			this.nextDirs=ByteBuffer.wrap(nextDirs);
 			
-	        try
-	        {	        	
-	        	BufferedReader br=new BufferedReader(new InputStreamReader(new FileInputStream(G.pathMazes+System.getProperty("file.separator")+fileName)));
-	            String input=br.readLine();
-	            
-	            int index=0;
-	            
-	            while(input!=null)
-	            {	
-                	distances[index++]=Integer.parseInt(input);
-	                input=br.readLine();
-	            }
-	        }
-	        catch(IOException ioe)
-	        {
-	            ioe.printStackTrace();
-	        }
+			for(int from=0;from<numNodes;from++)
+			{
+				if(numNeighbours[from]==0)
+					continue;
+				
+				for(int to=0;to<numNodes;to++)
+				{
+					int dir=0;
+					int min=Integer.MAX_VALUE;
+					
+					for(int i=0;i<4;i++)
+						if(neighbours[(from<<2)+i]!=-1)
+						{
+							int dist=getDistance(neighbours[(from<<2)+i],to);
+							
+							if(dist<min)
+							{
+								min=dist;
+								dir=i;
+							}
+						}
+					
+					int index=from*numNodes+to;
+					nextDirs[index>>>2]|=(byte)(dir<<((index&3)<<1));
+				}
+			}
+		}
+		
+		/*
+		 * Pre-computes the paths taken by ghosts, which may not reverse. A ghost is described by its node and the last
+		 * direction it took; for each such state and each target, the table stores the direction the ghost takes next
+		 * (same choice as getNextGhostDir(-) with DM.PATH, packed into 2 bits) and the length of the resulting path, as
+		 * returned by getGhostPathDistance(-). Lengths are stored as unsigned bytes: paths that are too long or never 
+		 * reach the target are marked as UNKNOWN_DISTANCE and walked on demand. Both tables are indexed by
+		 * ((node*4+lastDir)*numNodes+target).
+		 */
+		private void computeGhostPaths()
+		{
+			int numStates=numNodes*4;
+			
+			byte[] ghostDistances=new byte[numStates*numNodes];
+			byte[] ghostNextDirs=new byte[(numStates*numNodes+3)/4];
+			this.ghostDistances=ByteBuffer.wrap(ghostDistances);
+			this.ghostNextDirs=ByteBuffer.wrap(ghostNextDirs);
+			
+			int[] successors=new int[numStates];	//state reached from each state (or -1 if stuck)
+			int[] lengths=new int[numStates];		//-1 while unknown, -2 while being resolved
+			int[] stack=new int[numStates];
+			
+			for(int to=0;to<numNodes;to++)
+			{
+				for(int state=0;state<numStates;state++)
+				{
+					int node=state>>>2;
+					int reverse=getReverse(state&3);
+					int dir=-1;
+					int min=Integer.MAX_VALUE;
+					
+					for(int i=0;i<4;i++)
+						if(neighbours[(node<<2)+i]!=-1 && i!=reverse)
+						{
+							int dist=getDistance(neighbours[(node<<2)+i],to);
+							
+							if(dist<min)
+							{
+								min=dist;
+								dir=i;
+							}
+						}
+					
+					int index=state*numNodes+to;
+					
+					if(dir!=-1)
+					{
+						ghostNextDirs[index>>>2]|=(byte)(dir<<((index&3)<<1));
+						successors[state]=(neighbours[(node<<2)+dir]<<2)+dir;
+					}
+					else
+						successors[state]=-1;
+					
+					lengths[state]=(node==to) ? 0 : -1;
+				}
+				
+				//follow the moves until a state of known length is reached, then unwind
+				for(int state=0;state<numStates;state++)
+				{
+					int size=0;
+					int current=state;
+					
+					while(current!=-1 && lengths[current]==-1)
+					{
+						lengths[current]=-2;
+						stack[size++]=current;
+						current=successors[current];
+					}
+					
+					int length=(current==-1 || lengths[current]<0) ? UNKNOWN_DISTANCE : lengths[current];
+					
+					while(size>0)
+					{
+						if(length!=UNKNOWN_DISTANCE)
+							length=Math.min(length+1,UNKNOWN_DISTANCE);
+						
+						lengths[stack[--size]]=length;
+					}
+				}
+				
+				for(int state=0;state<numStates;state++)
+					ghostDistances[state*numNodes+to]=(byte)lengths[state];
+			}
 		}
-	}
-	
-	/*
-	 * Stores all information relating to a node in the graph, including all the indices required
-	 * to check and update the current state of the game.
-	 */
-	protected final class Node
-	{
-		protected int x,y,nodeIndex,pillIndex,powerPillIndex,numNeighbours;
-		protected int[] neighbours;
 		
-		protected Node(String nodeIndex,String x,String y,String pillIndex,String powerPillIndex,String[] neighbours)
+		/*
+		 * Pre-computes the directions that may be taken at each node, in increasing order, given the last direction
+		 * taken: entry (node*5+lastDir) excludes the reverse of lastDir while entry (node*5+4) contains all directions.
+		 * These arrays are shared by all games and must never be modified.
+		 */
+		private void computePossibleDirs()
 		{
-			this.nodeIndex=Integer.parseInt(nodeIndex);
-			this.x=Integer.parseInt(x);
-			this.y=Integer.parseInt(y);
-			this.pillIndex=Integer.parseInt(pillIndex);
-			this.powerPillIndex=Integer.parseInt(powerPillIndex);		
+			this.possibleDirs=new int[numNodes*5][];
 			
-			this.neighbours=new int[neighbours.length];
+			for(int node=0;node<numNodes;node++)
+				for(int lastDir=0;lastDir<=4;lastDir++)
+				{
+					int reverse=getReverse(lastDir);
+					int[] directions=new int[4];
+					int count=0;
+					
+					for(int i=0;i<4;i++)
+						if(neighbours[(node<<2)+i]!=-1 && i!=reverse)
+							directions[count++]=i;
+					
+					possibleDirs[node*5+lastDir]=Arrays.copyOf(directions,count);
+				}
+		}
+		
+		//Same as getPathDistance(-) but independent of the current maze (used during initialisation)
+		private int getDistance(int from,int to)
+		{
+			if(from==to)
+				return 0;
+			else if(from<to)
+				return distances.get(rowOffsets[to]+from);
+			else
+				return distances.get(rowOffsets[from]+to);
+		}
+		
+		//Pre-computes the offset of each row of the triangular distance matrix so look-ups need no multiplication
+		private void computeRowOffsets()
+		{
+			this.rowOffsets=new int[numNodes];
 			
-			for(int i=0;i<neighbours.length;i++)
+			for(int i=0;i<rowOffsets.length;i++)
+				rowOffsets[i]=(i*(i+1))/2;
+		}
+		
+		/*
+		 * Maps a maze written by save(-). The nodes are copied onto the heap (they are few) while the distances and all
+		 * look-up tables are used directly from the mapped file. Returns false if the file is not a valid maze file or
+		 * if it was converted from another version of the node file supplied (when that file is present).
+		 */
+		private boolean loadBinary(String fileName,String nodeFileName)
+		{
+			try(FileChannel channel=FileChannel.open(new File(G.pathMazes+System.getProperty("file.separator")+fileName).toPath(),StandardOpenOption.READ))
 			{
-				this.neighbours[i]=Integer.parseInt(neighbours[i]);
+				ByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+				
+				if(buffer.getInt()!=MAGIC || buffer.getInt()!=VERSION)
+				{
+					System.out.println("Ignoring "+fileName+": not a maze file of version "+VERSION);
+					return false;
+				}
+				
+				File nodeFile=new File(G.pathMazes+System.getProperty("file.separator")+nodeFileName);
+				byte[] hash=new byte[HASH_SIZE];
+				buffer.get(HEADER_SIZE-HASH_SIZE,hash);
+				
+				if(nodeFile.exists() && !Arrays.equals(hash,PathDistances.digest(nodeFile)))
+				{
+					System.out.println("Ignoring "+fileName+": "+nodeFileName+" has changed since it was converted");
+					return false;
+				}
+				
+				allocateNodes(buffer.getInt());
+				this.initialPacPosition=buffer.getInt();
+				this.lairPosition=buffer.getInt();
+				this.initialGhostsPosition=buffer.getInt();
+				this.pillIndices=new int[buffer.getInt()];
+				this.powerPillIndices=new int[buffer.getInt()];
+				this.junctionIndices=new int[buffer.getInt()];
+				this.width=buffer.getInt();
+				this.height=buffer.getInt();
+				
+				byte[] name=new byte[buffer.getInt()];
+				buffer.position(HEADER_SIZE);
+				buffer.get(name);
+				this.name=new String(name,StandardCharsets.UTF_8);
+				
+				int position=align(HEADER_SIZE+name.length);
+				buffer.position(position);
+				
+				for(int i=0;i<numNodes;i++)
+				{
+					int node=buffer.getInt();
+					x[node]=buffer.getInt();
+					y[node]=buffer.getInt();
+					
+					for(int j=0;j<4;j++)
+						neighbours[(node<<2)+j]=buffer.getInt();
+					
+					pillIndex[node]=buffer.getInt();
+					powerPillIndex[node]=buffer.getInt();
+				}
+				
+				indexNodes();
+				
+				position+=numNodes*NODE_SIZE;
+				int numDistances=((numNodes*(numNodes-1))/2)+numNodes;
+				this.distances=buffer.slice(position,numDistances*2).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+				computeRowOffsets();
+				position+=numDistances*2;
+				this.nextDirs=buffer.slice(position,(numNodes*numNodes+3)/4);
+				position+=nextDirs.capacity();
+				this.ghostNextDirs=buffer.slice(position,numNodes*numNodes);
+				position+=ghostNextDirs.capacity();
+				this.ghostDistances=buffer.slice(position,4*numNodes*numNodes);
+				
+				return true;
+			}
+			catch(IOException|NoSuchAlgorithmException|RuntimeException e)
+			{
+				e.printStackTrace();
+				return false;
+			}
+		}
+		
+		/*
+		 * Writes the maze, including the distances and all look-up tables, to a binary file that can later be mapped 
+		 * by loadBinary(-). All values are stored in little-endian order; the layout is: header (with the hash of the
+		 * node file supplied, which the maze was loaded from), name, nodes, distances, next directions, ghost next
+		 * directions and ghost distances.
+		 */
+		protected void save(String fileName,String nodeFileName) throws IOException
+		{
+			byte[] hash;
 			
-				if(this.neighbours[i]!=-1)
-					numNeighbours++;
+			try
+			{
+				hash=PathDistances.digest(new File(G.pathMazes+System.getProperty("file.separator")+nodeFileName));
 			}
+			catch(NoSuchAlgorithmException e)
+			{
+				throw new IOException(e);
+			}
+			
+
+			byte[] name=this.name.getBytes(StandardCharsets.UTF_8);
+			int position=align(HEADER_SIZE+name.length);
+			int size=position+numNodes*NODE_SIZE+distances.capacity()*2+nextDirs.capacity()+ghostNextDirs.capacity()+ghostDistances.capacity();
+			
+			ByteBuffer buffer=ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(numNodes);
+			buffer.putInt(initialPacPosition).putInt(lairPosition).putInt(initialGhostsPosition);
+			buffer.putInt(pillIndices.length).putInt(powerPillIndices.length).putInt(junctionIndices.length);
+			buffer.putInt(width).putInt(height).putInt(name.length).put(hash).put(name);
+			buffer.position(position);
+			
+			for(int node=0;node<numNodes;node++)
+			{
+				buffer.putInt(node).putInt(x[node]).putInt(y[node]);
+				
+				for(int i=0;i<4;i++)
+					buffer.putInt(neighbours[(node<<2)+i]);
+				
+				buffer.putInt(pillIndex[node]).putInt(powerPillIndex[node]);
+			}
+			
+			for(int i=0;i<distances.capacity();i++)
+				buffer.putShort(distances.get(i));
+			
+			buffer.put(nextDirs.duplicate().clear());
+			buffer.put(ghostNextDirs.duplicate().clear());
+			buffer.put(ghostDistances.duplicate().clear());
+			buffer.flip();
+			
+			try(FileChannel channel=FileChannel.open(new File(G.pathMazes+System.getProperty("file.separator")+fileName).toPath(),
+					StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				while(buffer.hasRemaining())
+					channel.write(buffer);
+			}
+		}
+		
+		//Rounds up to a multiple of 4 so that the sections that follow the name are aligned
+		private int align(int position)
+		{
+			return (position+3)&~3;
 		}
 	}
 }
\ No newline at end of file
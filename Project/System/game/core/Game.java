@@ -18,7 +18,8 @@ import java.util.Random;
 /*
  * This interface defines the contract between the game engine and the controllers. It provides all
  * the methods a controller may use to (a) query the game state, (b) compute game-related attributes
- * and (c) test moves by using a forward model (i.e., copy() followed by advanceGame()).
+ * and (c) test moves by using a forward model (i.e., copy() followed by advanceGame()). Simulations that
+ * copy the game many times should restore it into recycled copies using copyInto() (see GamePool).
  */
 public interface Game
 {
@@ -49,15 +50,21 @@ public interface Game
 	public static final int[] INITIAL_GHOST_DIRS={3,1,3,1};	//initial directions for the ghosts (after leaving the lair)
 	public static final int GHOST_SPEED_REDUCTION=2;		//difference in speed when ghosts are edible (every GHOST_SPEED_REDUCTION, a ghost remains stationary)
 	
-	public Game copy();												//returns an exact copy of the game (forward model)
+	public Game copy();												//returns an exact copy of the game (forward model); its random number generator is seeded with a key derived from the game's seed, time and number of copies made (see GameRandom.hash(-,-))
+	public void copyInto(Game target);								//copies the state of the game into a game previously obtained from copy(), without allocating any memory
 	public int[] advanceGame(int pacManDir,int[] ghostDirs);		//advances the game using the actions (directions) supplied; returns all directions played [PacMan, Ghost1, Ghost2, Ghost3, Ghost4]
+	public void setUndoable(boolean undoable);						//turns on/off the logging of the changes made by advanceGame(-,-) so they can be reverted with undo()
+	public boolean undo();											//reverts the last step logged (see setUndoable(-)); returns false if there is none
 	public int getReverse(int direction);							//returns the reverse of the direction supplied
+	public GameRandom getRandom();									//returns the random number generator of the game, to be used by controllers for all random decisions
 	public boolean gameOver();										//returns true is Ms Pac-Man has lost all her lives or if MAX_LEVELS has been reached
 	public boolean checkPill(int pillIndex);						//checks if the pill specified is still available
 	public boolean checkPowerPill(int powerPillIndex);				//checks if the power pill specified is still available
 	
 	public int[] getPacManNeighbours();								//returns an array of size 4, indicating neighbouring nodes for the current position of Ms Pac-Man. E.g., [-1,12,-1,44] for neighbours 12 and 44 in direction RIGHT and LEFT
 	public int[] getGhostNeighbours(int whichGhost);				//returns an array of size 4, indicating neighbouring nodes for the current position of the ghost specified. Replaces the direction corresponding to the opposite previous direction with -1
+	public int getPacManNeighbours(int[] neighbours);				//same as getPacManNeighbours() but fills the array supplied (length>=4) without allocating; returns 4
+	public int getGhostNeighbours(int whichGhost,int[] neighbours);	//same as getGhostNeighbours(-) but fills the array supplied (length>=4) without allocating; returns 4
 	
 	public int getCurLevel();										//returns the current level
 	public int getCurMaze();										//returns the current maze
@@ -87,6 +94,9 @@ public interface Game
 	public int[] getPillIndices();									//returns indices to all nodes with pills
 	public int[] getPowerPillIndices();								//returns indices to all nodes with power pills	
 	public int[] getJunctionIndices();								//returns indices to all nodes that are junctions
+	public int getPillIndices(int[] indices);						//same as getPillIndices() but fills the array supplied (length>=getNumberPills()); returns the number of pills
+	public int getPowerPillIndices(int[] indices);					//same as getPowerPillIndices() but fills the array supplied (length>=getNumberPowerPills()); returns the number of power pills
+	public int getJunctionIndices(int[] indices);					//same as getJunctionIndices() but fills the array supplied (must hold all junctions); returns the number of junctions
 	public boolean isJunction(int nodeIndex);						//returns true if node is a junction (more than 2 neighbours)
 	public int getNumNeighbours(int nodeIndex);						//returns the number of neighbours of the node specified
 	
@@ -100,10 +110,13 @@ public interface Game
 	
 	public int[] getPossiblePacManDirs(boolean includeReverse);		//returns the set of possible directions for Ms Pac-Man, with or without the direction opposite to the last direction taken
 	public int[] getPossibleGhostDirs(int whichGhost);				//returns the set of possible directions for the ghost specified (excludes the opposite of the previous direction)
+	public int getPossiblePacManDirs(boolean includeReverse,int[] directions);	//same as getPossiblePacManDirs(-) but fills the array supplied (length>=4); returns the number of directions
+	public int getPossibleGhostDirs(int whichGhost,int[] directions);	//same as getPossibleGhostDirs(-) but fills the array supplied (length>=4); returns the number of directions
 
 	public int[] getPath(int from,int to);							//returns the path from one node to another (e.g., [1,2,5,7,9] for 1 to 9)
 	public int[] getGhostPath(int whichGhost,int to);				//returns the path from one node to another, taking into account that reversals are not possible
 	public int getTarget(int from,int[] targets,boolean nearest,DM measure);	//selects a target from 'targets' given current position ('from'), a distance measure and whether it should be the point closest or farthest
+	public int getTarget(int from,int[] targets,int numTargets,boolean nearest,DM measure);	//same as getTarget(-,-,-,-) but only considers the first numTargets entries of 'targets' (e.g., a buffer filled by the caller)
 	public int getGhostTarget(int from,int[] targets,boolean nearest);	//selects a target for a ghost (accounts for the fact that ghosts may not reverse)
 	public int getGhostPathDistance(int whichGhost,int to);			//returns the distance of a path for the ghost specified (accounts for the fact that ghosts may not reverse)
 }
\ No newline at end of file
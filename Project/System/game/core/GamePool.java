@@ -0,0 +1,55 @@
+package game.core;
+
+import java.util.ArrayDeque;
+
+/*
+ * A pool of recycled copies of the game, for controllers (and the executor) that simulate the game many times per
+ * time step. Instead of calling copy(), which allocates a new game every time, acquire(-) restores the state of the
+ * game supplied into a copy that has been released earlier; a new copy is only created if the pool is empty.
+ * Typical use in a rollout-based controller:
+ *
+ * Game simulation=pool.acquire(game);
+ * ... advance the simulation ...
+ * pool.release(simulation);
+ *
+ * A copy must not be used once it has been released. Pools are not thread-safe: use one pool per thread.
+ */
+public final class GamePool
+{
+	private final ArrayDeque<Game> free;
+
+	public GamePool()
+	{
+		this(16);
+	}
+
+	public GamePool(int capacity)
+	{
+		free=new ArrayDeque<Game>(capacity);
+	}
+
+	//Returns a copy of the game supplied, re-using a released copy if one is available
+	public Game acquire(Game game)
+	{
+		Game copy=free.pollLast();
+
+		if(copy==null)
+			return game.copy();
+
+		game.copyInto(copy);
+
+		return copy;
+	}
+
+	//Returns the copy to the pool so it may be re-used by the next call to acquire(-)
+	public void release(Game copy)
+	{
+		free.addLast(copy);
+	}
+
+	//Number of copies currently available for re-use
+	public int size()
+	{
+		return free.size();
+	}
+}
@@ -0,0 +1,160 @@
+package game.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The random number generator of a game (SplitMix64, the algorithm behind java.util.SplittableRandom). Every game
+ * has its own generator, so games running in parallel never contend on a shared seed and every game can be
+ * reproduced from the seed it was started with. Copies of a game get a generator seeded with a key derived from the
+ * game's seed by hash(-,-), a counter-based split that draws nothing from the game's own generator: the original's
+ * sequence does not depend on how often it has been copied nor on what the copies do with theirs.
+ *
+ * Unlike SplittableRandom, the state may be overwritten, which allows copyInto(-) to re-seed a recycled copy
+ * without allocating anything. Instances are not thread-safe.
+ */
+public final class GameRandom
+{
+	private static final long GOLDEN_GAMMA=0x9e3779b97f4a7c15L;
+	private static final double DOUBLE_UNIT=0x1.0p-53;
+	private static final float FLOAT_UNIT=0x1.0p-24f;
+
+	//Only used to seed generators created without a seed
+	private static final AtomicLong seeder=new AtomicLong(mix64(System.currentTimeMillis())^mix64(System.nanoTime()));
+
+	private long seed,gamma;
+
+	//Generator with a seed that differs from one call to the next
+	public GameRandom()
+	{
+		this(newSeed());
+	}
+
+	public GameRandom(long seed)
+	{
+		setSeed(seed);
+	}
+
+	//Restarts the sequence from the seed supplied
+	public void setSeed(long seed)
+	{
+		this.seed=seed;
+		this.gamma=GOLDEN_GAMMA;
+	}
+
+	public long nextLong()
+	{
+		return mix64(nextSeed());
+	}
+
+	public int nextInt()
+	{
+		return mix32(nextSeed());
+	}
+
+	//Uniform in [0,bound)
+	public int nextInt(int bound)
+	{
+		if(bound<=0)
+			throw new IllegalArgumentException("bound must be positive");
+
+		int r=mix32(nextSeed());
+		int m=bound-1;
+
+		if((bound&m)==0)	//power of two
+			return r&m;
+
+		for(int u=r>>>1;u+m-(r=u%bound)<0;u=mix32(nextSeed())>>>1);
+
+		return r;
+	}
+
+	//Uniform in [0,1)
+	public double nextDouble()
+	{
+		return toDouble(nextLong());
+	}
+
+	//Uniform in [0,1)
+	public float nextFloat()
+	{
+		return (nextInt()>>>8)*FLOAT_UNIT;
+	}
+
+	public boolean nextBoolean()
+	{
+		return nextInt()<0;
+	}
+
+	//The state of the generator, for G's undo log: restoring both values with setState(-,-) restarts the sequence from there
+	long getSeed()
+	{
+		return seed;
+	}
+
+	long getGamma()
+	{
+		return gamma;
+	}
+
+	void setState(long seed,long gamma)
+	{
+		this.seed=seed;
+		this.gamma=gamma;
+	}
+
+	//Writes the state of the generator (see G.writeState(-))
+	void writeState(DataOutput out) throws IOException
+	{
+		out.writeLong(seed);
+		out.writeLong(gamma);
+	}
+
+	//Restores the state written by writeState(-)
+	void readState(DataInput in) throws IOException
+	{
+		seed=in.readLong();
+		gamma=in.readLong();
+	}
+
+	private long nextSeed()
+	{
+		return seed+=gamma;
+	}
+
+	//The counter-th value of the sequence of a generator seeded with mix64(key): a pseudo-random function of both values,
+	//which splits independent seeds (or random values) off a key without any state
+	public static long hash(long key,long counter)
+	{
+		return mix64(mix64(key)+(counter+1)*GOLDEN_GAMMA);
+	}
+
+	//Uniform in [0,1), from a random value (e.g., one returned by hash(-,-))
+	public static double toDouble(long value)
+	{
+		return (value>>>11)*DOUBLE_UNIT;
+	}
+
+	//A seed that differs from one call to the next
+	public static long newSeed()
+	{
+		return mix64(seeder.getAndAdd(2*GOLDEN_GAMMA));
+	}
+
+	private static long mix64(long z)
+	{
+		z=(z^(z>>>30))*0xbf58476d1ce4e5b9L;
+		z=(z^(z>>>27))*0x94d049bb133111ebL;
+
+		return z^(z>>>31);
+	}
+
+	private static int mix32(long z)
+	{
+		z=(z^(z>>>33))*0x62a9d9ed799705f5L;
+
+		return (int)(((z^(z>>>28))*0xcb24d0a5c88c35b3L)>>>32);
+	}
+}
@@ -0,0 +1,16 @@
+package game.core;
+
+import java.io.IOException;
+
+/*
+ * Records a game into a replay file (see Replay), one step at a time: ReplayRecorder records every action taken,
+ * CompactReplayRecorder only what is needed to play the game again. ReplayRecorder.open(-) picks the right one.
+ */
+public interface GameRecorder extends AutoCloseable
+{
+	//Records the step the game has just played, given the actions taken, as returned by Game.advanceGame(-,-)
+	public void record(int[] actionsTaken) throws IOException;
+	
+	//Completes the replay file
+	public void close() throws IOException;
+}
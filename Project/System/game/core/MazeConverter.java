@@ -0,0 +1,39 @@
+package game.core;
+
+import java.io.IOException;
+
+/*
+ * One-shot converter from the original text node files to the binary maze files that are memory-mapped by G.Maze.
+ * The binary files also contain the distances (see PathDistances) and all the look-up tables computed on start-up,
+ * so games start instantly once the conversion has been done. Run from the directory that contains the data folder:
+ *
+ * java game.core.MazeConverter [path to data]
+ *
+ * The mazes are loaded from the binary files whenever these are present, unless the node files have changed since
+ * (the binary files hold the hash of the node files they were converted from); simply delete them to go back to the
+ * text files.
+ */
+public class MazeConverter
+{
+	public static void main(String[] args)
+	{
+		if(args.length>0)
+			G.pathMazes=args[0];
+
+		G game=new G();
+
+		for(int i=0;i<G.NUM_MAZES;i++)
+		{
+			try
+			{
+				long start=System.currentTimeMillis();
+				game.new Maze(i,false).save(G.binNames[i],G.nodeNames[i]);
+				System.out.println("Converted maze "+G.nodeNames[i]+" to "+G.binNames[i]+" in "+(System.currentTimeMillis()-start)+" ms");
+			}
+			catch(IOException ioe)
+			{
+				ioe.printStackTrace();
+			}
+		}
+	}
+}
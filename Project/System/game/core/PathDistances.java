@@ -0,0 +1,174 @@
+package game.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/*
+ * Computes the shortest path distances between all pairs of nodes of a maze directly from its graph, using one
+ * breadth-first search per source node, spread across the common fork-join pool. The result has the same layout as
+ * the original distance files: a triangular matrix where the distance between 'from' and 'to' (from<=to) is found at
+ * index ((to*(to+1))/2)+from; unreachable pairs (i.e., the lair) are -1.
+ *
+ * Results are cached on disk, in the folder 'cache' next to the node files, under the SHA-256 hash of the node file.
+ * Any change to a maze thus results in new distances, and new mazes only require a node file.
+ */
+public final class PathDistances
+{
+	private static final int MAGIC=0x4D504453;	//"MPDS"
+	private static final int HEADER_SIZE=8;		//magic and number of distances
+
+	public static String cacheFolder="cache";
+
+	private PathDistances(){}
+
+	/*
+	 * Returns the distances for the maze whose nodes are stored in the file supplied and whose graph is given by
+	 * 'neighbours' (4 entries per node, one per direction, as in G.Maze). The distances are mapped from the cache if
+	 * possible, otherwise they are computed and added to the cache.
+	 */
+	public static ShortBuffer load(File nodeFile,int[] neighbours)
+	{
+		int numNodes=neighbours.length/4;
+		int numDistances=((numNodes*(numNodes-1))/2)+numNodes;
+		File cacheFile=null;
+
+		try
+		{
+			cacheFile=new File(new File(nodeFile.getParentFile(),cacheFolder),hash(nodeFile)+".dist");
+
+			if(cacheFile.exists())
+			{
+				ShortBuffer distances=map(cacheFile,numDistances);
+
+				if(distances!=null)
+					return distances;
+			}
+		}
+		catch(IOException|NoSuchAlgorithmException e)
+		{
+			e.printStackTrace();
+		}
+
+		short[] distances=compute(neighbours);
+
+		if(cacheFile!=null)
+			save(distances,cacheFile);
+
+		return ShortBuffer.wrap(distances);
+	}
+
+	//Computes the distances between all pairs of nodes: one breadth-first search per source node, run in parallel
+	public static short[] compute(int[] neighbours)
+	{
+		int numNodes=neighbours.length/4;
+		short[] distances=new short[((numNodes*(numNodes-1))/2)+numNodes];
+
+		//each source only writes its own row (all targets up to and including itself), so no synchronisation is needed
+		IntStream.range(0,numNodes).parallel().forEach(source->
+		{
+			int[] depths=new int[numNodes];
+			int[] queue=new int[numNodes];
+			int head=0,tail=0;
+
+			Arrays.fill(depths,-1);
+			depths[source]=0;
+			queue[tail++]=source;
+
+			while(head<tail)
+			{
+				int node=queue[head++];
+
+				for(int i=node<<2;i<(node<<2)+4;i++)
+				{
+					int neighbour=neighbours[i];
+					
+					if(neighbour!=-1 && depths[neighbour]==-1)
+					{
+						depths[neighbour]=depths[node]+1;
+						queue[tail++]=neighbour;
+					}
+				}
+			}
+
+			int rowOffset=(source*(source+1))/2;
+
+			for(int target=0;target<=source;target++)
+				distances[rowOffset+target]=(short)depths[target];
+		});
+
+		return distances;
+	}
+
+	//SHA-256 hash of the file's content (also used to tie a binary maze file to its node file, see G.Maze)
+	static byte[] digest(File file) throws IOException,NoSuchAlgorithmException
+	{
+		return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+	}
+
+	//Hex string of the SHA-256 hash of the file's content
+	private static String hash(File file) throws IOException,NoSuchAlgorithmException
+	{
+		StringBuilder hex=new StringBuilder();
+
+		for(byte b : digest(file))
+			hex.append(String.format("%02x",b));
+
+		return hex.toString();
+	}
+
+	//Maps the cached distances; returns null if the file does not match the expected number of distances
+	private static ShortBuffer map(File file,int numDistances) throws IOException
+	{
+		try(FileChannel channel=FileChannel.open(file.toPath(),StandardOpenOption.READ))
+		{
+			if(channel.size()!=HEADER_SIZE+2L*numDistances)
+				return null;
+
+			ByteBuffer buffer=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+			if(buffer.getInt()!=MAGIC || buffer.getInt()!=numDistances)
+				return null;
+
+			return buffer.slice(HEADER_SIZE,2*numDistances).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		}
+	}
+
+	//Writes the distances to a temporary file first, which is then moved into place, so concurrent JVMs never see partial files
+	private static void save(short[] distances,File file)
+	{
+		try
+		{
+			Files.createDirectories(file.getParentFile().toPath());
+			Path temp=Files.createTempFile(file.getParentFile().toPath(),file.getName(),".tmp");
+
+			ByteBuffer buffer=ByteBuffer.allocate(HEADER_SIZE+2*distances.length).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(distances.length);
+			buffer.asShortBuffer().put(distances);
+			buffer.clear();
+
+			try(FileChannel channel=FileChannel.open(temp,StandardOpenOption.WRITE))
+			{
+				while(buffer.hasRemaining())
+					channel.write(buffer);
+			}
+
+			Files.move(temp,file.toPath(),StandardCopyOption.REPLACE_EXISTING,StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+	}
+}
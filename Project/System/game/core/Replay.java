@@ -3,62 +3,93 @@ package game.core;
 import game.controllers.GhostController;
 import game.controllers.PacManController;
 import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 
 /*
- * This class allows one to record games to replay them later. This may be done in the Exec class.
- * It simply records all the directions taken by the controllers AFTER directions were corrected and/or
- * random ghost reversals. The game must be replayed using _RG_ which does not have random reversal events
- * and allows ghosts to reverse (to mirror random ghost reversals that took place during the original
- * game play).
+ * This class allows one to replay games recorded with ReplayRecorder. This may be done in the Exec class.
+ * The recordings simply contain all the directions taken by the controllers AFTER directions were corrected
+ * and/or random ghost reversals (older recordings in text format, one step per line, may also be loaded),
+ * plus keyframes of the game state, so that a replay may start at any step (see getGame(-)). The game
+ * must be replayed using _RG_ which does not have random reversal events and allows ghosts to reverse
+ * (to mirror random ghost reversals that took place during the original game play).
+ *
+ * Recordings are memory-mapped, not loaded: the steps stay packed as in the file (one 16-bit word per step,
+ * see ReplayRecorder.encode(-)) and are decoded when the controllers of the replay ask for them, so a replay
+ * costs a handful of objects however long the game (text recordings are packed the same way into an array).
+ *
+ * Compact recordings (see CompactReplayRecorder) have no steps: the game is played again when they are loaded, by
+ * new instances of the controllers recorded, and the steps they take are packed into an array as above. Those
+ * recordings are verified against the state hashes they hold instead of keyframes.
  */
-@SuppressWarnings({"rawtypes","unchecked"})
 public class Replay
 {
-    private PacManController pacMan;
-    private GhostController ghosts;
+    private final PacManController pacMan;
+    private final GhostController ghosts;
 
-    private ArrayList<Integer> pacManActions;
-    private ArrayList<int[]> ghostActions;
+    private ShortBuffer steps;                                      //one word per step, packed by ReplayRecorder.encode(-)
+    private ByteBuffer keyframes;                                   //the file, if it has keyframes
+    private int[] keyframeSteps=new int[0],keyframeOffsets=new int[0];    //keyframes: step and offset of their state in the file
+    private int keyframesEnd;
+    private int[] checkpointSteps=new int[0];                       //compact recordings: step and hash of the game at their checkpoints
+    private long[] checkpointHashes=new long[0];
+    private boolean complete;                                       //whether a compact recording has its final checkpoint
 
+    //Loads the recording in the file supplied (relative to the working directory unless absolute)
     public Replay(String fileName)
     {
         loadActions(fileName);
         this.pacMan=new ReplayMsPacman();
         this.ghosts=new ReplayGhostTeam();
     }
- 
-	public void loadActions(String fileName)
-    {
-        ArrayList[] data=loadData(fileName);
-        pacManActions=data[0];
-        ghostActions=data[1];
-    }
 
-    public static void saveActions(String actions,String fileName,boolean append)
+    //Loads the recording in the file supplied, replacing the current one; fails with an IllegalStateException if it is of another version
+    public void loadActions(String fileName)
     {
-        try
+        Path file=Path.of(fileName);
+
+        try(FileChannel channel=FileChannel.open(file))
         {
-            FileOutputStream outS=new FileOutputStream(fileName,append);
-            PrintWriter pw=new PrintWriter(outS);
+            ByteBuffer bytes=channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+
+            keyframeSteps=new int[0];
+            keyframeOffsets=new int[0];
+            keyframes=null;
+            checkpointSteps=new int[0];
+            checkpointHashes=new long[0];
+
+            int magic=bytes.limit()>=6 ? bytes.getInt(0) : 0;
 
-            pw.println(actions);
+            if(magic==ReplayRecorder.MAGIC || magic==CompactReplayRecorder.MAGIC)
+            {
+                short version=bytes.getShort(4),expected=magic==ReplayRecorder.MAGIC ? ReplayRecorder.VERSION : CompactReplayRecorder.VERSION;
 
-            pw.flush();
-            outS.close();
+                if(version!=expected)
+                    throw new IllegalStateException("replay "+fileName+" is of version "+version+", not "+expected);
 
+                if(magic==ReplayRecorder.MAGIC)
+                    loadBinary(bytes);
+                else
+                    loadCompact(bytes);
+            }
+            else
+                loadText(file);
         }
-        catch (Exception e)
+        catch(IOException ioe)
         {
-            System.out.println("Could not save data!");
+            throw new UncheckedIOException("could not load replay "+fileName,ioe);
         }
     }
-    
+
     public PacManController getPacMan()
     {
         return pacMan;
@@ -69,60 +100,255 @@ public class Replay
         return ghosts;
     }
 
-	public ArrayList[] loadData(String fileName)
+    //Number of steps recorded
+    public int getNumSteps()
+    {
+        return steps.limit();
+    }
+
+    //Action Ms Pac-Man took in the step supplied (G.getTotalTime() before the step)
+    public int getPacManAction(int step)
+    {
+        return (steps.get(step)&7)-1;
+    }
+
+    //Action the ghost supplied took in the step supplied
+    public int getGhostAction(int step,int whichGhost)
+    {
+        return ((steps.get(step)>>>((whichGhost+1)*ReplayRecorder.BITS_PER_ACTION))&7)-1;
+    }
+
+    /*
+     * The game as it was after the number of steps supplied (0 for the start, at most getNumSteps()), to be played
+     * on with the controllers of the replay: restores the nearest keyframe before that step and replays the steps
+     * from there. Without keyframes (older recordings), the game is replayed from the start.
+     */
+    public _RG_ getGame(int step)
     {
-    	ArrayList[] data=new ArrayList[2];
-        data[0]=new ArrayList<Integer>();
-        data[1]=new ArrayList<int[]>();
+        step=Math.max(0,Math.min(step,getNumSteps()));
+
+        _RG_ game=new _RG_();
+        int keyframe=keyframeSteps.length-1;
+
+        while(keyframe>=0 && keyframeSteps[keyframe]>step)
+            keyframe--;
+
+        if(keyframe>=0)
+            readKeyframe(keyframe,game);
+        else
+            game.newGame();
+
+        int[] ghostActions=new int[G.NUM_GHOSTS];
+
+        while(game.getTotalTime()<step && !game.gameOver())
+        {
+            int time=game.getTotalTime();
+
+            for(int i=0;i<ghostActions.length;i++)
+                ghostActions[i]=getGhostAction(time,i);
+
+            game.advanceGame(getPacManAction(time),ghostActions);
+        }
+
+        return game;
+    }
+
+    //Whether the last keyframe (or checkpoint) holds the state of the game at the end of the recording (binary recordings that were not cut short)
+    public boolean hasFinalState()
+    {
+        if(checkpointSteps.length>0)
+            return complete && checkpointSteps[checkpointSteps.length-1]==getNumSteps();
+
+        return keyframeSteps.length>0 && keyframeSteps[keyframeSteps.length-1]==getNumSteps();
+    }
+
+    /*
+     * Whether the game supplied, re-simulated from the recording, is in the state recorded for its time: true if
+     * there is no keyframe (or checkpoint) for that time, otherwise whether it matches the keyframe (see
+     * G.hasSameState(-)) or the hash of the checkpoint (see G.getStateHash()). Called after every step of a
+     * re-simulation, this finds the first keyframe from which a replay does not reproduce the recorded game (see
+     * ReplayAnalyzer).
+     */
+    public boolean isConsistent(Game game)
+    {
+        int checkpoint=Arrays.binarySearch(checkpointSteps,game.getTotalTime());
+
+        if(checkpoint>=0)
+            return checkpointHashes[checkpoint]==((G)game).getStateHash();
+
+        int keyframe=Arrays.binarySearch(keyframeSteps,game.getTotalTime());
+
+        if(keyframe<0)
+            return true;
+
+        _RG_ recorded=new _RG_();
+        readKeyframe(keyframe,recorded);
+
+        return recorded.hasSameState((G)game);
+    }
+
+    private void readKeyframe(int keyframe,G game)
+    {
+        byte[] state=new byte[(keyframe+1<keyframeOffsets.length ? keyframeOffsets[keyframe+1] : keyframesEnd)-keyframeOffsets[keyframe]];
+        keyframes.get(keyframeOffsets[keyframe],state);
 
         try
         {
-            BufferedReader br=new BufferedReader(new InputStreamReader(new FileInputStream(System.getProperty("user.dir")+"/"+fileName)));
+            game.readState(new DataInputStream(new ByteArrayInputStream(state)));
+        }
+        catch(IOException ioe)
+        {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    //Views the steps and reads the index of the keyframes (if any) of a file written by ReplayRecorder (see there for the format)
+    private void loadBinary(ByteBuffer bytes)
+    {
+        int headerSize=ReplayRecorder.HEADER_SIZE,size=bytes.limit();
+        int numSteps=(size-headerSize)/2,numKeyframes=0,indexOffset=0;
+
+        //a recording that was cut short has no footer (and thus no keyframes)
+        if(size>=headerSize+ReplayRecorder.FOOTER_SIZE && bytes.getInt(size-4)==ReplayRecorder.MAGIC)
+        {
+            numSteps=bytes.getInt(size-ReplayRecorder.FOOTER_SIZE);
+            numKeyframes=bytes.getInt(size-ReplayRecorder.FOOTER_SIZE+4);
+            indexOffset=(int)bytes.getLong(size-ReplayRecorder.FOOTER_SIZE+8);
+        }
+
+        steps=bytes.slice(headerSize,2*numSteps).asShortBuffer();
+        keyframeSteps=new int[numKeyframes];
+        keyframeOffsets=new int[numKeyframes];
+
+        for(int i=0;i<numKeyframes;i++)
+        {
+            keyframeSteps[i]=bytes.getInt(indexOffset+12*i);
+            keyframeOffsets[i]=headerSize+2*numSteps+(int)bytes.getLong(indexOffset+12*i+4);
+        }
+
+        keyframes=bytes;
+        keyframesEnd=indexOffset;
+    }
+
+    /*
+     * Plays the game of a file written by CompactReplayRecorder (see there for the format) again with new instances
+     * of its controllers, packing the steps taken, and reads its checkpoints. Fails with an IllegalStateException if
+     * the controllers cannot be created.
+     */
+    private void loadCompact(ByteBuffer bytes) throws IOException
+    {
+        byte[] content=new byte[bytes.limit()];
+        bytes.get(0,content);
+
+        DataInputStream in=new DataInputStream(new ByteArrayInputStream(content,6,content.length-6));
+        long seed=in.readLong();
+        PacManController pacManController=newController(in.readUTF(),PacManController.class);
+        GhostController ghostController=newController(in.readUTF(),GhostController.class);
+
+        //a recording that was cut short has no footer (and thus no final checkpoint)
+        int numCheckpoints=in.available()/CompactReplayRecorder.CHECKPOINT_SIZE;
+        complete=in.available()%CompactReplayRecorder.CHECKPOINT_SIZE==4 && bytes.getInt(content.length-4)==CompactReplayRecorder.MAGIC;
+        checkpointSteps=new int[numCheckpoints];
+        checkpointHashes=new long[numCheckpoints];
+
+        for(int i=0;i<numCheckpoints;i++)
+        {
+            checkpointSteps[i]=in.readInt();
+            checkpointHashes[i]=in.readLong();
+        }
+
+        //updated after every step of the game played again
+        short[][] packed={new short[1024]};
+        int[] numSteps={0};
+
+        _G_ game=new _G_();
+        game.newGame(seed);
+        game.play(pacManController,ghostController,actionsTaken->
+        {
+            if(numSteps[0]==packed[0].length)
+                packed[0]=Arrays.copyOf(packed[0],2*numSteps[0]);
+
+            packed[0][numSteps[0]++]=ReplayRecorder.encode(actionsTaken);
+        });
+
+        steps=ShortBuffer.wrap(packed[0],0,numSteps[0]).slice();
+    }
+
+    private static <T> T newController(String className,Class<T> type)
+    {
+        try
+        {
+            return Class.forName(className).asSubclass(type).getConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException|ClassCastException e)
+        {
+            throw new IllegalStateException("could not create controller "+className,e);
+        }
+    }
+
+    //Packs the steps of a recording in the original text format: one line per step, with the time and the five actions separated by tabs
+    private void loadText(Path file) throws IOException
+    {
+        short[] packed=new short[1024];
+        int numSteps=0;
+        int[] actions=new int[G.NUM_GHOSTS+1];
+
+        try(BufferedReader br=Files.newBufferedReader(file,StandardCharsets.UTF_8))
+        {
             String input=br.readLine();
 
             while(input!=null && !input.equals(""))
             {
                 input=input.trim();
-                String[] numbers=input.split("\t");
 
-                if(!numbers[0].equals("#"))                     //ignore comments
+                if(!input.startsWith("#"))                      //ignore comments
                 {
-                    data[0].add(Integer.parseInt(numbers[1]));  //action for Ms Pac-Man
+                    int start=input.indexOf('\t')+1;            //skip the time
 
-                    int[] ghostActions=new int[4];              //actions for ghosts
+                    for(int i=0;i<actions.length;i++)
+                    {
+                        int end=input.indexOf('\t',start);
 
-                    for(int i=0;i<ghostActions.length;i++)
-                	    ghostActions[i]=Integer.parseInt(numbers[i+2]);
+                        if(end<0)
+                            end=input.length();
 
-                    data[1].add(ghostActions);
+                        actions[i]=Integer.parseInt(input,start,end,10);
+                        start=end+1;
+                    }
+
+                    if(numSteps==packed.length)
+                        packed=Arrays.copyOf(packed,2*numSteps);
+
+                    packed[numSteps++]=ReplayRecorder.encode(actions);
                 }
 
                 input=br.readLine();
             }
         }
-        catch(IOException ioe)
-        {
-            ioe.printStackTrace();
-        }
 
-        return data;
+        steps=ShortBuffer.wrap(packed,0,numSteps).slice();
     }
-        
-	//Simple controller that simply plays the next recorded action
+
+    //Simple controller that simply plays the next recorded action
     class ReplayMsPacman implements PacManController
     {
         public int getAction(Game game,long timeDue)
         {
-            return pacManActions.get(game.getTotalTime());
+            return getPacManAction(game.getTotalTime());
         }
     }
 
-	//Simple controller that simply plays the next recorded action
+    //Simple controller that simply plays the next recorded action (in the same array every time)
     class ReplayGhostTeam implements GhostController
     {
+        private final int[] actions=new int[G.NUM_GHOSTS];
+
         public int[] getActions(Game game,long timeDue)
         {
-            return ghostActions.get(game.getTotalTime());
+            for(int i=0;i<actions.length;i++)
+                actions[i]=getGhostAction(game.getTotalTime(),i);
+
+            return actions;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package game.core;
+
+import game.controllers.GhostController;
+import game.controllers.PacManController;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Records the actions taken in a game, step by step, into a replay file (see Replay). The file consists of:
+ *
+ * header:    MAGIC, VERSION, keyframe interval (int)
+ * steps:     one 16-bit word per step that packs the five actions taken (Ms Pac-Man's, then the ghosts') at 3 bits
+ *            each (see encode(-)), so a game of 10,000 steps takes 20 KB
+ * keyframes: the state of the game (see G.writeState(-)) at the start, after every interval steps and at the end
+ * index:     the step of every keyframe and its offset from the first one
+ * footer:    the number of steps and of keyframes, the offset of the index and MAGIC again
+ *
+ * A replay can thus seek to any step by restoring the nearest keyframe and replaying at most interval steps from
+ * there (see Replay.getGame(-)), and the final keyframe allows a replay to be verified (see Replay.isConsistent(-)).
+ * The steps are buffered and written to the file at the end of every level (see flush()), when the buffer is full
+ * and when the recorder is closed, so recording a step only costs a couple of shifts. The keyframes are kept in
+ * memory and written when the recorder is closed: the steps of a game whose recording was cut short can still be
+ * replayed, only without keyframes.
+ *
+ * Games played by deterministic controllers need not record their steps at all (see CompactReplayRecorder):
+ * open(-) only falls back to this recorder for those that cannot be played again from their seed, or whose
+ * controllers may not be those their classes' no-argument constructors create.
+ */
+public class ReplayRecorder implements GameRecorder
+{
+	public static final int MAGIC=0x4D505250;		//"MPRP"
+	public static final short VERSION=1;
+	public static final int HEADER_SIZE=10;			//bytes
+	public static final int FOOTER_SIZE=20;			//bytes
+	public static final int BITS_PER_ACTION=3;		//actions are stored +1, so -1 (none) to 6 fit
+	public static final int DEFAULT_KEYFRAME_INTERVAL=1000;
+
+	private static final int BUFFER_SIZE=1<<14;
+
+	private final G game;
+	private final int keyframeInterval;
+	private final FileChannel channel;
+	private final ByteBuffer buffer=ByteBuffer.allocate(BUFFER_SIZE);
+	private final ByteArrayOutputStream keyframes=new ByteArrayOutputStream();
+	private final DataOutputStream keyframeOut=new DataOutputStream(keyframes);
+	private final ByteArrayOutputStream indexBytes=new ByteArrayOutputStream();
+	private final DataOutputStream index=new DataOutputStream(indexBytes);
+	private int steps,numKeyframes,level;
+
+	//Creates the replay file supplied, overwriting any existing one, to record the game supplied from its current state on
+	public ReplayRecorder(String fileName,G game) throws IOException
+	{
+		this(fileName,game,DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	//Same as above, with a keyframe every keyframeInterval steps
+	public ReplayRecorder(String fileName,G game,int keyframeInterval) throws IOException
+	{
+		if(keyframeInterval<1)
+			throw new IllegalArgumentException("the keyframe interval must be positive");
+
+		this.game=game;
+		this.keyframeInterval=keyframeInterval;
+		this.level=game.getCurLevel();
+
+		channel=FileChannel.open(Path.of(fileName),StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING,StandardOpenOption.WRITE);
+		buffer.putInt(MAGIC).putShort(VERSION).putInt(keyframeInterval);
+		addKeyframe();
+	}
+
+	/*
+	 * Records a replay of the game supplied, which must just have been started with the seed supplied, into the file
+	 * supplied: a compact one (see CompactReplayRecorder) if the caller vouches that the controllers are as their
+	 * classes' public no-argument constructors create them (defaultInstances: nothing can tell a controller configured
+	 * by its supplier from a new one) and the game can be played again from its seed (see isReproducible(-)),
+	 * otherwise one with all the actions taken.
+	 */
+	public static GameRecorder open(String fileName,G game,long seed,PacManController pacManController,GhostController ghostController,boolean defaultInstances) throws IOException
+	{
+		if(defaultInstances && isReproducible(game,pacManController,ghostController))
+			return new CompactReplayRecorder(fileName,game,seed,pacManController,ghostController);
+
+		return new ReplayRecorder(fileName,game);
+	}
+
+	/*
+	 * Whether the game supplied can be played again from its seed, provided the controllers are default instances
+	 * (see above): it has not started yet and both controllers are deterministic and can be re-created by their
+	 * classes' public no-argument constructors.
+	 */
+	public static boolean isReproducible(G game,PacManController pacManController,GhostController ghostController)
+	{
+		return game.getTotalTime()==0 && pacManController.isDeterministic() && ghostController.isDeterministic()
+				&& isInstantiable(pacManController.getClass()) && isInstantiable(ghostController.getClass());
+	}
+
+	private static boolean isInstantiable(Class<?> type)
+	{
+		try
+		{
+			return Modifier.isPublic(type.getModifiers()) && !Modifier.isAbstract(type.getModifiers()) && type.getCanonicalName()!=null
+					&& Modifier.isPublic(type.getConstructor().getModifiers());
+		}
+		catch(NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
+
+	//Records the actions taken in the step the game has just played, as returned by Game.advanceGame(-,-)
+	public void record(int[] actionsTaken) throws IOException
+	{
+		if(!buffer.hasRemaining())
+			flush();
+
+		buffer.putShort(encode(actionsTaken));
+
+		if(++steps%keyframeInterval==0)
+			addKeyframe();
+
+		//saves the steps after every level
+		if(game.getCurLevel()!=level)
+		{
+			level=game.getCurLevel();
+			flush();
+		}
+	}
+
+	//Writes the steps recorded so far to the file
+	public void flush() throws IOException
+	{
+		buffer.flip();
+
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+
+		buffer.clear();
+	}
+
+	//Writes the remaining steps, the keyframes (with that of the game's current state, which should be its end) and the index
+	public void close() throws IOException
+	{
+		if(!channel.isOpen())
+			return;
+
+		flush();
+
+		if(steps%keyframeInterval!=0)
+			addKeyframe();
+
+		write(keyframes.toByteArray());
+
+		long indexOffset=channel.position();
+		write(indexBytes.toByteArray());
+		write(ByteBuffer.allocate(FOOTER_SIZE).putInt(steps).putInt(numKeyframes).putLong(indexOffset).putInt(MAGIC).array());
+		channel.close();
+	}
+
+	private void addKeyframe() throws IOException
+	{
+		index.writeInt(steps);
+		index.writeLong(keyframes.size());
+		game.writeState(keyframeOut);
+		numKeyframes++;
+	}
+
+	private void write(byte[] bytes) throws IOException
+	{
+		ByteBuffer data=ByteBuffer.wrap(bytes);
+
+		while(data.hasRemaining())
+			channel.write(data);
+	}
+
+	//Packs the five actions of a step: Ms Pac-Man's in the lowest 3 bits, then the ghosts' in order
+	public static short encode(int[] actions)
+	{
+		int word=0;
+
+		for(int i=0;i<=G.NUM_GHOSTS;i++)
+		{
+			if(actions[i]<-1 || actions[i]>6)
+				throw new IllegalArgumentException("action "+actions[i]+" cannot be recorded");
+
+			word|=(actions[i]+1)<<(i*BITS_PER_ACTION);
+		}
+
+		return (short)word;
+	}
+
+	//Unpacks the actions of a step into the array supplied (of at least 5 elements)
+	public static void decode(short word,int[] actions)
+	{
+		for(int i=0;i<=G.NUM_GHOSTS;i++)
+			actions[i]=((word>>>(i*BITS_PER_ACTION))&7)-1;
+	}
+}
@@ -13,18 +13,37 @@
  */
 package game.core;
 
+import game.controllers.GhostController;
+import game.controllers.PacManController;
 import java.util.BitSet;
+import java.util.function.Consumer;
 
 public class _G_ extends G
 {
 	public static final int EDIBLE_ALERT=30;	//for display only (ghosts turning blue)
 		
-	//Instantiates everything to start a new game
+	//Instantiates everything to start a new game, with a random seed
 	public void newGame()
+	{
+		newGame(GameRandom.newSeed());
+	}
+	
+	//Instantiates everything to start a new game; games started with the same seed (and played by deterministic
+	//controllers) are identical
+	public void newGame(long seed)
 	{	
 		init();		//load mazes if not yet loaded
 		
+		if(random==null)
+			random=new GameRandom(seed);
+		else
+			random.setSeed(seed);
+		
+		this.seed=seed;
+		copyTime=-1;
+		
 		curMaze=0;
+		maze=mazes[curMaze];
 		
 		curGhostLocs=new int[G.NUM_GHOSTS];
 		lastGhostDirs=new int[G.NUM_GHOSTS];
@@ -42,19 +61,40 @@ public class _G_ extends G
 		livesRemaining=G.NUM_LIVES;
 		extraLife=false;
 		gameOver=false;
+		undoSize=0;
 		
 		reset(false);
 	}
 	
+	//Plays the game until it is over without time limits; the listener, if any, is called after every step with the
+	//actions taken (see Game.advanceGame(-,-)). A game started with the same seed and played by new instances of the
+	//same deterministic controllers is played again step for step (see ReplayRecorder.open(-))
+	public void play(PacManController pacManController,GhostController ghostController,Consumer<int[]> listener)
+	{
+		//the controllers return before the game advances, so their copies are restored rather than re-allocated every step
+		Game pacManCopy=copy(),ghostsCopy=copy();
+		
+		while(!gameOver())
+		{
+			long due=System.currentTimeMillis()+G.DELAY;
+			copyInto(pacManCopy);
+			copyInto(ghostsCopy);
+			int[] actionsTaken=advanceGame(pacManController.getAction(pacManCopy,due),ghostController.getActions(ghostsCopy,due));
+			
+			if(listener!=null)
+				listener.accept(actionsTaken);
+		}
+	}
+	
 	//Size of the Maze (for display only)
 	public int getWidth()
 	{
-		return mazes[curMaze].width;
+		return maze.width;
 	}
 	
 	//Size of the Maze (for display only)
 	public int getHeight()
 	{
-		return mazes[curMaze].height;
+		return maze.height;
 	}
 }
\ No newline at end of file
@@ -8,10 +8,19 @@ package game.core;
  */
 public final class _RG_ extends _G_
 {	
-	//Updates the locations of the ghosts without reversals
+	//Updates the locations of the ghosts without reversals of its own. A recorded reversal (a ghost going back the
+	//way it came, which it cannot do otherwise) is replayed as one: the ghost moves even if it is edible and would
+	//otherwise have skipped this step
 	protected void updateGhosts(int[] directions,boolean reverse)
 	{
-		super.updateGhosts(directions,false);
+		for(int i=0;i<directions.length;i++)
+		{
+			if(lairTimes[i]==0 && (directions[i]==getReverse(lastGhostDirs[i]) || edibleTimes[i]==0 || edibleTimes[i]%GHOST_SPEED_REDUCTION!=0))
+			{
+				lastGhostDirs[i]=directions[i];
+				curGhostLocs[i]=getNeighbour(curGhostLocs[i],directions[i]);
+			}
+		}
 	}
 	
 	public int checkGhostDir(int whichGhost,int direction)